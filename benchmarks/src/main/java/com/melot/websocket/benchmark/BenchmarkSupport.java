@@ -0,0 +1,129 @@
+package com.melot.websocket.benchmark;
+
+import com.melot.websocket.annotation.OnBinary;
+import com.melot.websocket.annotation.OnMessage;
+import com.melot.websocket.handler.EndpointServerHandler;
+import com.melot.websocket.model.MethodMapping;
+import com.melot.websocket.model.OutboundPolicy;
+import com.melot.websocket.model.OverflowPolicy;
+import com.melot.websocket.model.ServerEndpointConfig;
+import com.melot.websocket.model.Session;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.DefaultChannelId;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * 基准测试公用的 endpoint、配置和 channel
+ */
+final class BenchmarkSupport {
+    static final String PATH = "/ws";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * 被测 endpoint，回调只做最少的工作，避免掩盖分发开销
+     */
+    public static class BenchEndpoint {
+        private long received;
+
+        @OnMessage
+        public void onMessage(Session session, String message) {
+            received += message.length();
+        }
+
+        @OnBinary
+        public void onBinary(Session session, ByteBuf content) {
+            received += content.readableBytes();
+        }
+    }
+
+    static ServerEndpointConfig config() {
+        ServerEndpointConfig config = new ServerEndpointConfig();
+        config.setHost("127.0.0.1");
+        config.setPort(0);
+        config.setPath(PATH);
+        config.setMaxContentLength(65536);
+        config.setMaxFramePayloadLength(65536);
+        config.setOverflowPolicy(OverflowPolicy.PAUSE_READ);
+        config.setOutboundPolicy(OutboundPolicy.NONE);
+        config.setWriteBufferLowWaterMark(32 * 1024);
+        config.setWriteBufferHighWaterMark(64 * 1024);
+        config.setCompressionLevel(6);
+        config.setCompressionWindowBits(15);
+        config.setCompressionContextTakeover(true);
+        return config;
+    }
+
+    static MethodMapping methodMapping() throws Exception {
+        return new MethodMapping(BenchEndpoint.class, null, null) {
+            @Override
+            public Object getEndpointInstance() {
+                return new BenchEndpoint();
+            }
+        };
+    }
+
+    static EndpointServerHandler endpointHandler() throws Exception {
+        return new EndpointServerHandler(methodMapping(), config());
+    }
+
+    static String payload(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * EmbeddedChannel 默认共用同一个 ChannelId，放进 ChannelGroup 会被去重，这里为每个 channel 分配独立 id
+     */
+    static EmbeddedChannel channel(ChannelHandler... handlers) {
+        return new EmbeddedChannel(DefaultChannelId.newInstance(), handlers);
+    }
+
+    /**
+     * 丢弃 channel 中已写出的消息
+     */
+    static void drain(EmbeddedChannel channel) {
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    /**
+     * remoteAddress 为 InetSocketAddress 的 {@link EmbeddedChannel}，与真实 SocketChannel 一样经过 WebsocketServerHandler
+     */
+    static final class SocketEmbeddedChannel extends EmbeddedChannel {
+        private static final InetSocketAddress LOCAL = new InetSocketAddress("127.0.0.1", 8192);
+        private static int nextPort = 1024;
+
+        private final InetSocketAddress remote = new InetSocketAddress("127.0.0.1", nextPort());
+
+        SocketEmbeddedChannel(ChannelHandler... handlers) {
+            super(DefaultChannelId.newInstance(), handlers);
+        }
+
+        private static synchronized int nextPort() {
+            nextPort = nextPort >= 65535 ? 1024 : nextPort + 1;
+            return nextPort;
+        }
+
+        @Override
+        protected SocketAddress localAddress0() {
+            return LOCAL;
+        }
+
+        @Override
+        protected SocketAddress remoteAddress0() {
+            return remote;
+        }
+    }
+}
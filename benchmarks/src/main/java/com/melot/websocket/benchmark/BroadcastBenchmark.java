@@ -0,0 +1,71 @@
+package com.melot.websocket.benchmark;
+
+import com.melot.websocket.model.Broadcaster;
+import com.melot.websocket.model.Session;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 广播给 N 个 session：逐个 sendText 与预编码帧广播对比
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    @Param({"100", "1000"})
+    public int sessions;
+
+    @Param({"256"})
+    public int size;
+
+    private EmbeddedChannel[] channels;
+    private Session[] sessionArray;
+    private Broadcaster broadcaster;
+    private String text;
+
+    @Setup
+    public void setup() {
+        broadcaster = new Broadcaster("benchmark");
+        channels = new EmbeddedChannel[sessions];
+        sessionArray = new Session[sessions];
+        for (int i = 0; i < sessions; i++) {
+            channels[i] = BenchmarkSupport.channel(new WebSocket13FrameEncoder(false));
+            sessionArray[i] = new Session(channels[i]);
+            broadcaster.add(channels[i]);
+        }
+        text = BenchmarkSupport.payload(size);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (EmbeddedChannel channel : channels) {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Benchmark
+    public void sendTextLoop() {
+        for (Session session : sessionArray) {
+            session.sendText(text);
+        }
+        drainAll();
+    }
+
+    @Benchmark
+    public void preparedBroadcast() {
+        broadcaster.broadcastText(text);
+        drainAll();
+    }
+
+    private void drainAll() {
+        for (EmbeddedChannel channel : channels) {
+            BenchmarkSupport.drain(channel);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.melot.websocket.benchmark;
+
+import com.melot.websocket.handler.EndpointServerHandler;
+import com.melot.websocket.handler.WebsocketServerHandler;
+import com.melot.websocket.model.ServerEndpointConfig;
+import com.melot.websocket.netty.WebSocketChannelInitializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * 握手完成后空闲连接的常驻堆内存与 pipeline 长度。
+ * <p>
+ * 不是 JMH 基准，单独运行：
+ * <pre>
+ * java -Xmx4g -cp target/benchmarks.jar com.melot.websocket.benchmark.ConnectionFootprint [连接数] [compression]
+ * </pre>
+ * EmbeddedChannel 自身(含各自的 EmbeddedEventLoop)也计入结果，只用于比较不同提交之间的差值
+ */
+public class ConnectionFootprint {
+    private static final String UPGRADE_REQUEST = "GET " + BenchmarkSupport.PATH + " HTTP/1.1\r\n" +
+            "Host: 127.0.0.1\r\n" +
+            "Upgrade: websocket\r\n" +
+            "Connection: Upgrade\r\n" +
+            "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n" +
+            "Sec-WebSocket-Version: 13\r\n";
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        boolean compression = args.length > 1 && Boolean.parseBoolean(args[1]);
+
+        ServerEndpointConfig config = BenchmarkSupport.config();
+        config.setCompression(compression);
+        EndpointServerHandler handler = new EndpointServerHandler(BenchmarkSupport.methodMapping(), config);
+        WebSocketChannelInitializer initializer = new WebSocketChannelInitializer(config, new WebsocketServerHandler(handler));
+        String request = UPGRADE_REQUEST + (compression ? "Sec-WebSocket-Extensions: permessage-deflate\r\n" : "") + "\r\n";
+
+        // 预热一个连接，排除类加载和共享对象
+        EmbeddedChannel[] channels = new EmbeddedChannel[count];
+        handshake(initializer, request).finishAndReleaseAll();
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = usedHeap(memory);
+        for (int i = 0; i < count; i++) {
+            channels[i] = handshake(initializer, request);
+        }
+        long after = usedHeap(memory);
+
+        System.out.println("pipeline: " + channels[0].pipeline().names());
+        System.out.println("handlers: " + (channels[0].pipeline().names().size() - 1));
+        System.out.println("connections: " + count + ", compression: " + compression);
+        System.out.println("bytes/connection: " + (after - before) / count);
+        System.out.println("MB per 1M connections: " + (after - before) / count * 1000000L / (1024 * 1024));
+
+        for (EmbeddedChannel channel : channels) {
+            channel.finishAndReleaseAll();
+        }
+        handler.close();
+    }
+
+    private static EmbeddedChannel handshake(WebSocketChannelInitializer initializer, String request) {
+        EmbeddedChannel channel = new BenchmarkSupport.SocketEmbeddedChannel(initializer);
+        channel.writeInbound(Unpooled.copiedBuffer(request, CharsetUtil.US_ASCII));
+        // 执行握手完成后提交到 EventLoop 的任务
+        channel.runPendingTasks();
+        ByteBuf response = channel.readOutbound();
+        response.release();
+        BenchmarkSupport.drain(channel);
+        return channel;
+    }
+
+    private static long usedHeap(MemoryMXBean memory) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
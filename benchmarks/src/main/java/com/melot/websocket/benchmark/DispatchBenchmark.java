@@ -0,0 +1,59 @@
+package com.melot.websocket.benchmark;
+
+import com.melot.websocket.handler.EndpointServerHandler;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EndpointServerHandler#doOnMessage}/{@link EndpointServerHandler#doOnBinary} 在 {@link EmbeddedChannel} 上的分发开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    @Param({"64", "4096"})
+    public int size;
+
+    private EndpointServerHandler handler;
+    private EmbeddedChannel channel;
+    private TextWebSocketFrame textFrame;
+    private BinaryWebSocketFrame binaryFrame;
+
+    @Setup
+    public void setup() throws Exception {
+        handler = BenchmarkSupport.endpointHandler();
+        channel = BenchmarkSupport.channel();
+        handler.doOnOpen(channel, null);
+        textFrame = new TextWebSocketFrame(BenchmarkSupport.payload(size));
+        ByteBuf content = PooledByteBufAllocator.DEFAULT.directBuffer(size);
+        content.writeZero(size);
+        binaryFrame = new BinaryWebSocketFrame(content);
+    }
+
+    @TearDown
+    public void tearDown() {
+        textFrame.release();
+        binaryFrame.release();
+        channel.finishAndReleaseAll();
+        handler.close();
+    }
+
+    @Benchmark
+    public void onMessage() {
+        handler.doOnMessage(channel, textFrame);
+    }
+
+    @Benchmark
+    public void onBinary() {
+        handler.doOnBinary(channel, binaryFrame);
+    }
+}
@@ -0,0 +1,63 @@
+package com.melot.websocket.benchmark;
+
+import com.melot.websocket.handler.EndpointServerHandler;
+import com.melot.websocket.handler.WebsocketServerHandler;
+import com.melot.websocket.model.ServerEndpointConfig;
+import com.melot.websocket.netty.WebSocketChannelInitializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 经过 NettyServer 完整 pipeline 的握手吞吐：建连、升级请求、响应、关闭
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandshakeBenchmark {
+    private static final ByteBuf UPGRADE_REQUEST = Unpooled.unreleasableBuffer(Unpooled.copiedBuffer(
+            "GET " + BenchmarkSupport.PATH + " HTTP/1.1\r\n" +
+                    "Host: 127.0.0.1\r\n" +
+                    "Upgrade: websocket\r\n" +
+                    "Connection: Upgrade\r\n" +
+                    "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n" +
+                    "Sec-WebSocket-Version: 13\r\n\r\n", CharsetUtil.US_ASCII));
+
+    @Param({"false", "true"})
+    public boolean compression;
+
+    private EndpointServerHandler handler;
+    private WebSocketChannelInitializer initializer;
+
+    @Setup
+    public void setup() throws Exception {
+        ServerEndpointConfig config = BenchmarkSupport.config();
+        config.setCompression(compression);
+        handler = new EndpointServerHandler(BenchmarkSupport.methodMapping(), config);
+        initializer = new WebSocketChannelInitializer(config, new WebsocketServerHandler(handler));
+    }
+
+    @TearDown
+    public void tearDown() {
+        handler.close();
+    }
+
+    @Benchmark
+    public int handshake() {
+        EmbeddedChannel channel = new BenchmarkSupport.SocketEmbeddedChannel(initializer);
+        channel.writeInbound(UPGRADE_REQUEST.duplicate());
+        ByteBuf response = channel.readOutbound();
+        int length = response.readableBytes();
+        response.release();
+        BenchmarkSupport.drain(channel);
+        channel.finishAndReleaseAll();
+        return length;
+    }
+}
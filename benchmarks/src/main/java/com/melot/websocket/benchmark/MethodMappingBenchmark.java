@@ -0,0 +1,85 @@
+package com.melot.websocket.benchmark;
+
+import com.melot.websocket.model.MethodMapping;
+import com.melot.websocket.support.MethodArgumentResolver;
+import com.melot.websocket.support.MethodInvoker;
+import com.melot.websocket.support.ReflectiveMethodInvoker;
+import com.melot.websocket.support.ByteBufMethodArgumentResolver;
+import com.melot.websocket.support.SessionMethodArgumentResolver;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.MethodParameter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @OnBinary(Session, ByteBuf) 参数解析 + 调用：反射路径与生成的调用器对比，参数解析几乎没有开销，主要比较调用本身。
+ * methodHandle 是字段中非常量 MethodHandle 的 invokeExact，作为 LambdaMetafactory 生成调用器的对照
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodMappingBenchmark {
+    private MethodMapping methodMapping;
+    private MethodInvoker invoker;
+    private MethodInvoker reflectiveInvoker;
+    private MethodHandle handle;
+    private MethodParameter[] parameters;
+    private MethodArgumentResolver[] resolvers;
+    private Method method;
+    private Object endpoint;
+    private EmbeddedChannel channel;
+    private BinaryWebSocketFrame frame;
+
+    @Setup
+    public void setup() throws Exception {
+        methodMapping = BenchmarkSupport.methodMapping();
+        invoker = methodMapping.getOnBinaryInvoker();
+        method = methodMapping.getOnBinary();
+        endpoint = methodMapping.getEndpointInstance();
+        channel = BenchmarkSupport.channel();
+        frame = new BinaryWebSocketFrame(Unpooled.wrappedBuffer(new byte[64]));
+        parameters = new MethodParameter[]{new MethodParameter(method, 0), new MethodParameter(method, 1)};
+        resolvers = new MethodArgumentResolver[]{new SessionMethodArgumentResolver(), new ByteBufMethodArgumentResolver()};
+        reflectiveInvoker = new ReflectiveMethodInvoker(method, parameters, resolvers);
+        handle = MethodHandles.publicLookup().unreflect(method)
+                .asType(MethodType.genericMethodType(3).changeReturnType(void.class));
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.release();
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public void reflective() throws Exception {
+        method.invoke(endpoint, methodMapping.getOnBinaryArgs(channel, frame));
+    }
+
+    @Benchmark
+    public void reflectiveInvoker() throws Throwable {
+        reflectiveInvoker.invoke(endpoint, channel, frame);
+    }
+
+    @Benchmark
+    public void methodHandle() throws Throwable {
+        handle.invokeExact(endpoint,
+                resolvers[0].resolveArgument(parameters[0], channel, frame),
+                resolvers[1].resolveArgument(parameters[1], channel, frame));
+    }
+
+    @Benchmark
+    public void generatedInvoker() throws Throwable {
+        invoker.invoke(endpoint, channel, frame);
+    }
+}
@@ -0,0 +1,94 @@
+package com.melot.websocket.benchmark;
+
+import com.melot.websocket.model.Session;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session 各发送方法经过帧编码器后的开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionSendBenchmark {
+    @Param({"64", "4096"})
+    public int size;
+
+    private EmbeddedChannel channel;
+    private Session session;
+    private String text;
+    private byte[] bytes;
+    private ByteBuffer byteBuffer;
+
+    @Setup
+    public void setup() {
+        channel = BenchmarkSupport.channel(new WebSocket13FrameEncoder(false));
+        session = new Session(channel);
+        text = BenchmarkSupport.payload(size);
+        bytes = text.getBytes();
+        byteBuffer = ByteBuffer.allocateDirect(size);
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public void sendText() {
+        session.sendText(text);
+        BenchmarkSupport.drain(channel);
+    }
+
+    @Benchmark
+    public void sendBinaryBytes() {
+        session.sendBinary(bytes);
+        BenchmarkSupport.drain(channel);
+    }
+
+    @Benchmark
+    public void sendBinaryByteBuffer() {
+        byteBuffer.clear();
+        session.sendBinary(byteBuffer);
+        BenchmarkSupport.drain(channel);
+    }
+
+    @Benchmark
+    public void sendBinaryByteBuf() {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(size).writeBytes(bytes);
+        session.sendBinary(buf);
+        BenchmarkSupport.drain(channel);
+    }
+
+    /**
+     * 连续 5 条消息，每条都 flush
+     */
+    @Benchmark
+    public void sendText5() {
+        for (int i = 0; i < 5; i++) {
+            session.sendText(text);
+        }
+        BenchmarkSupport.drain(channel);
+    }
+
+    /**
+     * 连续 5 条消息，只 flush 一次
+     */
+    @Benchmark
+    public void writeText5ThenFlush() {
+        for (int i = 0; i < 5; i++) {
+            session.writeText(text);
+        }
+        session.flush();
+        BenchmarkSupport.drain(channel);
+    }
+}
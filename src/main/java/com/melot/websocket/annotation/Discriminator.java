@@ -0,0 +1,38 @@
+package com.melot.websocket.annotation;
+
+import com.melot.websocket.codec.IntHeaderDiscriminator;
+import com.melot.websocket.codec.JsonFieldDiscriminator;
+import com.melot.websocket.codec.MessageDiscriminator;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明 endpoint 取消息类型的方式，配合 {@link OnMessage#type()}/{@link OnBinary#type()} 使用；未声明时使用默认值
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface Discriminator {
+
+    /**
+     * text 消息的类型提取方式，非内置实现时优先取容器中的 bean，否则用无参构造创建
+     */
+    Class<? extends MessageDiscriminator> text() default JsonFieldDiscriminator.class;
+
+    /**
+     * {@link JsonFieldDiscriminator} 读取的字段名
+     */
+    String field() default "type";
+
+    /**
+     * binary 消息的类型提取方式，非内置实现时优先取容器中的 bean，否则用无参构造创建
+     */
+    Class<? extends MessageDiscriminator> binary() default IntHeaderDiscriminator.class;
+
+    /**
+     * {@link IntHeaderDiscriminator} 读取的 int 相对消息开头的偏移
+     */
+    int offset() default 0;
+}
@@ -8,4 +8,10 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface OnBinary {
-}
\ No newline at end of file
+
+    /**
+     * 消息类型，由 {@link Discriminator} 声明的方式从消息中取出后路由到对应方法；
+     * 不声明时处理其他所有消息，同一 endpoint 最多一个
+     */
+    int[] type() default {};
+}
\ No newline at end of file
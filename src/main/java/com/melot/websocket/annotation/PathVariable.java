@@ -0,0 +1,18 @@
+package com.melot.websocket.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 注入路径模板中的变量，如 path = "/room/{id}" 时的 @PathVariable("id")
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PathVariable {
+    /**
+     * 变量名，为空时使用参数名
+     */
+    String value() default "";
+}
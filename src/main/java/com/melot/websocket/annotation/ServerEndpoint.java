@@ -19,7 +19,16 @@ public @interface ServerEndpoint {
 
     int accepts() default 0;
 
-    int heartbeat() default 30000;
+    /**
+     * 服务端 ping 间隔毫秒数，默认 0 不发送心跳。
+     * 开启后 ping 计为写、pong 计为读，大于该间隔的 readerIdleTime/writeIdleTime/allIdleTime 不会再触发 IdleStateEvent
+     */
+    int heartbeat() default 0;
+
+    /**
+     * ping 发出后连续多少个心跳间隔没有收到 pong 时断开连接
+     */
+    int heartbeatMaxMissed() default 3;
 
     int readerIdleTime() default 0;
 
@@ -28,4 +37,167 @@ public @interface ServerEndpoint {
     int allIdleTime() default 60;
 
     int maxContentLength() default 8192;
-}
\ No newline at end of file
+
+    /**
+     * 建立连接后未在该毫秒数内完成 websocket 握手则断开，0 表示不限制
+     */
+    int handshakeTimeout() default 30000;
+
+    /**
+     * 写缓冲低水位(字节)，待写字节数降到该值以下时连接恢复可写
+     */
+    int writeBufferLowWaterMark() default 32 * 1024;
+
+    /**
+     * 写缓冲高水位(字节)，待写字节数超过该值时连接变为不可写
+     */
+    int writeBufferHighWaterMark() default 64 * 1024;
+
+    /**
+     * 连接不可写时的下行策略 {@link com.melot.websocket.model.OutboundPolicy}
+     */
+    String outboundPolicy() default "NONE";
+
+    /**
+     * 不可写期间暂存的最大消息数(DROP_OLDEST/CONFLATE)
+     */
+    int outboundQueueSize() default 1024;
+
+    /**
+     * 持续不可写超过该毫秒数后断开连接，0 表示不限制，DISCONNECT 策略下必须大于0
+     */
+    int unwritableTimeout() default 0;
+
+    /**
+     * 是否支持 RFC 7692 permessage-deflate 压缩扩展
+     */
+    boolean compression() default false;
+
+    /**
+     * 压缩级别 0-9
+     */
+    int compressionLevel() default 6;
+
+    /**
+     * 服务端压缩窗口位数 8-15，小于15时无法共享广播的压缩结果；
+     * 小于15需要 classpath 中有 com.jcraft:jzlib(Netty 用它实现非默认窗口)，否则固定使用15
+     */
+    int compressionWindowBits() default 15;
+
+    /**
+     * 服务端是否保留压缩上下文，关闭后压缩率略降，但广播时同一消息只需压缩一次
+     * 关闭时握手响应会主动带上 server_no_context_takeover(RFC 7692 允许)，个别客户端实现未请求该参数时会拒绝握手
+     */
+    boolean compressionContextTakeover() default true;
+
+    /**
+     * 小于该字节数的消息不压缩
+     */
+    int compressionThreshold() default 0;
+
+    /**
+     * 大于0时在 pipeline 头部加入 {@link io.netty.handler.flush.FlushConsolidationHandler}，
+     * 同一读周期/EventLoop tick 内的 flush 合并，最多合并该数量的 flush
+     */
+    int flushConsolidations() default 0;
+
+    /**
+     * 业务线程数，大于0时回调在业务线程池中执行(同一 session 保持顺序)，不阻塞 IO 线程
+     */
+    int businessThreads() default 0;
+
+    /**
+     * 业务线程池模式下单个 session 允许堆积的消息回调数
+     */
+    int sessionQueueSize() default 1024;
+
+    /**
+     * 超过 sessionQueueSize 时的处理策略 {@link com.melot.websocket.model.OverflowPolicy}
+     */
+    String overflowPolicy() default "PAUSE_READ";
+
+    /**
+     * session 二级索引名，如 userId、deviceId，用于 Session.bindKey/sendTo
+     */
+    String[] indexes() default {};
+
+    /**
+     * 监听 socket 的 accept 队列长度，0 表示使用系统默认值(somaxconn)
+     */
+    int backlog() default 0;
+
+    /**
+     * 开启 SO_REUSEPORT 并绑定 acceptors 个监听 socket，由内核在多个 boss 线程间分配新连接，仅 epoll 传输支持
+     */
+    boolean reusePort() default false;
+
+    /**
+     * reusePort 开启时的监听 socket 数(同时也是自建 boss 线程数)；共用线程组的 boss 线程少于该值时单独创建 boss 线程组
+     */
+    int acceptors() default 1;
+
+    /**
+     * TCP_FASTOPEN 队列长度，0 表示不开启，仅 epoll 传输支持
+     */
+    int tcpFastOpen() default 0;
+
+    /**
+     * 连接的 SO_SNDBUF 字节数，0 表示使用系统默认值
+     */
+    int sendBufferSize() default 0;
+
+    /**
+     * 连接的 SO_RCVBUF 字节数，0 表示使用系统默认值
+     */
+    int receiveBufferSize() default 0;
+
+    /**
+     * 单个 session 每秒最多接收的数据帧数，0 表示不限制
+     */
+    int messageRateLimit() default 0;
+
+    /**
+     * 单个 session 每秒最多接收的数据帧字节数(解压后)，0 表示不限制
+     */
+    int byteRateLimit() default 0;
+
+    /**
+     * 超过 messageRateLimit/byteRateLimit 时的处理策略 {@link com.melot.websocket.model.RateLimitPolicy}
+     */
+    String rateLimitPolicy() default "PAUSE_READ";
+
+    /**
+     * 同一来源 IP 每秒最多新建的连接数，0 表示不限制
+     */
+    int connectionRateLimit() default 0;
+
+    /**
+     * connectionRateLimit 记录的来源 IP 数上限，超出时淘汰最久未访问的 IP
+     */
+    int connectionRateLimitAddresses() default 65536;
+
+    /**
+     * endpoint 实例的创建方式 {@link com.melot.websocket.model.InstanceStrategy}
+     */
+    String instanceStrategy() default "PROTOTYPE";
+
+    /**
+     * POOL 模式下池中最多保留的空闲实例数
+     */
+    int instancePoolSize() default 1024;
+
+    /**
+     * 单个 websocket 帧的最大字节数，超过时以 1009 关闭连接
+     */
+    int maxFramePayloadLength() default 65536;
+
+    /**
+     * 分片消息的回调方式 {@link com.melot.websocket.model.MessageMode}，默认聚合成完整消息后回调，逐帧回调需显式开启
+     */
+    String messageMode() default "AGGREGATE";
+
+    /**
+     * AGGREGATE 模式下聚合后消息的最大字节数
+     */
+    int maxMessageSize() default 1048576;
+}
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.melot.websocket.autoconfigure;
+
+import com.melot.websocket.metrics.JmxMetricsExporter;
+import com.melot.websocket.metrics.MicrometerMetricsExporter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 注册内置的指标导出器，自定义导出器实现 {@link com.melot.websocket.metrics.MetricsExporter} 并声明为 bean 即可
+ */
+@Configuration
+@AutoConfigureAfter(name = {
+        "org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration",
+        "org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration",
+        "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration"})
+public class NettyWebSocketMetricsAutoConfigure {
+
+    @Bean
+    @ConditionalOnMissingBean(JmxMetricsExporter.class)
+    @ConditionalOnProperty(prefix = "spring.jmx", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public JmxMetricsExporter jmxMetricsExporter() {
+        return new JmxMetricsExporter();
+    }
+
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    static class MicrometerConfiguration {
+
+        @Bean
+        @ConditionalOnBean(MeterRegistry.class)
+        @ConditionalOnMissingBean(MicrometerMetricsExporter.class)
+        public MicrometerMetricsExporter micrometerMetricsExporter(MeterRegistry registry) {
+            return new MicrometerMetricsExporter(registry);
+        }
+    }
+}
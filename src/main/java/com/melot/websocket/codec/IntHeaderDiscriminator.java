@@ -0,0 +1,23 @@
+package com.melot.websocket.codec;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 二进制消息头部的 int(大端序)作为消息类型
+ */
+public class IntHeaderDiscriminator implements MessageDiscriminator {
+    private final int offset;
+
+    /**
+     * @param offset int 相对 frame 内容开头的偏移
+     */
+    public IntHeaderDiscriminator(int offset) {
+        this.offset = offset;
+    }
+
+    @Override
+    public int discriminate(ByteBuf content) {
+        int index = content.readerIndex() + offset;
+        return index + 4 <= content.writerIndex() ? content.getInt(index) : NONE;
+    }
+}
@@ -0,0 +1,74 @@
+package com.melot.websocket.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+/**
+ * JSON 文本中某个整数字段的值作为消息类型，只扫描字节查找第一个 {@code "field":}，不解析整个消息。
+ * <p>
+ * 值可以是数字或带引号的数字；嵌套对象中的同名字段如果出现在前面也会被匹配，消息类型字段应放在靠前的位置
+ */
+public class JsonFieldDiscriminator implements MessageDiscriminator {
+    private final byte[] key;
+
+    public JsonFieldDiscriminator(String field) {
+        this.key = ("\"" + field + "\"").getBytes(CharsetUtil.UTF_8);
+    }
+
+    @Override
+    public int discriminate(ByteBuf content) {
+        int end = content.writerIndex();
+        for (int i = content.readerIndex(); i <= end - key.length; i++) {
+            if (!matches(content, i)) {
+                continue;
+            }
+            int j = skipWhitespace(content, i + key.length, end);
+            if (j >= end || content.getByte(j) != ':') {
+                continue;
+            }
+            j = skipWhitespace(content, j + 1, end);
+            if (j < end && content.getByte(j) == '"') {
+                j++;
+            }
+            boolean negative = j < end && content.getByte(j) == '-';
+            if (negative) {
+                j++;
+            }
+            long value = 0;
+            int digits = 0;
+            for (; j < end && digits <= 10; j++, digits++) {
+                byte b = content.getByte(j);
+                if (b < '0' || b > '9') {
+                    break;
+                }
+                value = value * 10 + (b - '0');
+            }
+            if (digits == 0 || digits > 10) {
+                return NONE;
+            }
+            value = negative ? -value : value;
+            return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? NONE : (int) value;
+        }
+        return NONE;
+    }
+
+    private boolean matches(ByteBuf content, int index) {
+        for (int k = 0; k < key.length; k++) {
+            if (content.getByte(index + k) != key[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(ByteBuf content, int index, int end) {
+        while (index < end) {
+            byte b = content.getByte(index);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                break;
+            }
+            index++;
+        }
+        return index;
+    }
+}
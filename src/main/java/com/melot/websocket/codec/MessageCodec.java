@@ -0,0 +1,34 @@
+package com.melot.websocket.codec;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 消息编解码 SPI，声明为 Spring bean 后自动注册，可用 {@link org.springframework.core.annotation.Order} 排序。
+ * <p>
+ * @OnMessage/@OnBinary 的参数类型不是内置支持的类型时，注册期按参数类型选定 codec，收到消息时直接从 frame 内容解码；
+ * {@link com.melot.websocket.model.Session#sendObject(Object)} 按对象类型选定 codec，编码到池化 buffer 后发送
+ */
+public interface MessageCodec {
+
+    /**
+     * 是否能编解码该类型
+     */
+    boolean supports(Class<?> type);
+
+    /**
+     * @param content frame 内容，只在调用期间有效，不要释放
+     */
+    Object decode(ByteBuf content, Class<?> type) throws Exception;
+
+    /**
+     * @param out 池化 buffer，写入编码结果即可
+     */
+    void encode(Object message, ByteBuf out) throws Exception;
+
+    /**
+     * sendObject 时发送 text frame 还是 binary frame
+     */
+    default boolean text() {
+        return true;
+    }
+}
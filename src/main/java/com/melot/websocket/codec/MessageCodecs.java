@@ -0,0 +1,66 @@
+package com.melot.websocket.codec;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 已注册的 {@link MessageCodec}，按类型查找的结果缓存，同一类型只遍历一次
+ */
+public class MessageCodecs {
+    public static final MessageCodecs EMPTY = new MessageCodecs(new ArrayList<MessageCodec>());
+
+    /**
+     * 缓存中表示没有 codec 支持该类型
+     */
+    private static final MessageCodec NONE = new MessageCodec() {
+        @Override
+        public boolean supports(Class<?> type) {
+            return false;
+        }
+
+        @Override
+        public Object decode(io.netty.buffer.ByteBuf content, Class<?> type) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void encode(Object message, io.netty.buffer.ByteBuf out) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    private final List<MessageCodec> codecs;
+    private final ConcurrentMap<Class<?>, MessageCodec> cache = new ConcurrentHashMap<>();
+
+    /**
+     * @param codecs 按优先级排好序
+     */
+    public MessageCodecs(Collection<? extends MessageCodec> codecs) {
+        this.codecs = new ArrayList<>(codecs);
+    }
+
+    /**
+     * @return 第一个支持该类型的 codec，没有时返回 null
+     */
+    public MessageCodec find(Class<?> type) {
+        MessageCodec codec = cache.get(type);
+        if (codec == null) {
+            codec = NONE;
+            for (MessageCodec candidate : codecs) {
+                if (candidate.supports(type)) {
+                    codec = candidate;
+                    break;
+                }
+            }
+            cache.putIfAbsent(type, codec);
+        }
+        return codec == NONE ? null : codec;
+    }
+
+    public boolean isEmpty() {
+        return codecs.isEmpty();
+    }
+}
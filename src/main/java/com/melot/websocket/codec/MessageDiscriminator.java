@@ -0,0 +1,17 @@
+package com.melot.websocket.codec;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 从 frame 内容中取出消息类型，用于把消息路由到 {@code @OnMessage(type = ...)}/{@code @OnBinary(type = ...)} 方法。
+ * <p>
+ * 实现只能用绝对下标读取 content，不能改变 readerIndex，也不能保留 content 的引用
+ */
+public interface MessageDiscriminator {
+    /**
+     * 取不到类型，交给未声明 type 的方法处理
+     */
+    int NONE = Integer.MIN_VALUE;
+
+    int discriminate(ByteBuf content);
+}
@@ -0,0 +1,73 @@
+package com.melot.websocket.handler;
+
+import com.melot.websocket.model.InstanceStrategy;
+import com.melot.websocket.model.MethodMapping;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 按 {@link InstanceStrategy} 为连接提供 endpoint 实例
+ */
+class EndpointInstanceProvider {
+    private final MethodMapping methodMapping;
+    private final InstanceStrategy strategy;
+    /**
+     * SINGLETON 时的共享实例
+     */
+    private final Object singleton;
+    /**
+     * POOL 时空闲的实例
+     */
+    private final Queue<Object> pool;
+
+    EndpointInstanceProvider(MethodMapping methodMapping, InstanceStrategy strategy, int poolSize) {
+        this.methodMapping = methodMapping;
+        this.strategy = strategy == null ? InstanceStrategy.PROTOTYPE : strategy;
+        if (this.strategy == InstanceStrategy.SINGLETON) {
+            try {
+                this.singleton = methodMapping.getEndpointInstance();
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to instance @ServerEndpoint", e);
+            }
+        } else {
+            this.singleton = null;
+        }
+        this.pool = this.strategy == InstanceStrategy.POOL ? new ArrayBlockingQueue<>(Math.max(poolSize, 1)) : null;
+    }
+
+    Object acquire() {
+        switch (strategy) {
+            case SINGLETON:
+                return singleton;
+            case POOL:
+                Object instance = pool.poll();
+                return instance != null ? instance : methodMapping.getEndpointInstance();
+            default:
+                return methodMapping.getEndpointInstance();
+        }
+    }
+
+    /**
+     * 连接的最后一个回调执行完后调用
+     */
+    void release(Object instance) {
+        if (pool != null && instance != null) {
+            pool.offer(instance);
+        }
+    }
+
+    /**
+     * 是否需要在连接关闭后归还实例
+     */
+    boolean recycles() {
+        return pool != null;
+    }
+
+    /**
+     * 池中空闲的实例数
+     */
+    int idle() {
+        return pool == null ? 0 : pool.size();
+    }
+}
@@ -1,119 +1,292 @@
 package com.melot.websocket.handler;
 
+import com.melot.websocket.codec.MessageCodecs;
+import com.melot.websocket.metrics.EndpointMetrics;
+import com.melot.websocket.model.Broadcaster;
+import com.melot.websocket.model.MessageMode;
 import com.melot.websocket.model.MethodMapping;
+import com.melot.websocket.model.OutboundPolicy;
+import com.melot.websocket.model.OverflowPolicy;
 import com.melot.websocket.model.ServerEndpointConfig;
 import com.melot.websocket.model.Session;
+import com.melot.websocket.model.SessionIndex;
+import com.melot.websocket.model.TopicRegistry;
+import com.melot.websocket.support.MethodInvoker;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelId;
+import io.netty.channel.ChannelOutboundBuffer;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler.HandshakeComplete;
 import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class EndpointServerHandler {
     private static final Logger logger = LoggerFactory.getLogger(EndpointServerHandler.class);
 
     private static final AttributeKey<Object> IMPLEMENT_KEY = AttributeKey.valueOf("WEBSOCKET_IMPLEMENT");
 
+    private static final AttributeKey<SessionTaskQueue> TASK_QUEUE_KEY = AttributeKey.valueOf("WEBSOCKET_TASK_QUEUE");
+
+    /**
+     * 未结束的分片消息首帧是否被丢弃，收到最后一帧时清除；只在 IO 线程读写
+     */
+    private static final AttributeKey<Boolean> FRAGMENT_DROPPED_KEY = AttributeKey.valueOf("WEBSOCKET_FRAGMENT_DROPPED");
+
     public static final AttributeKey<Session> SESSION_KEY = AttributeKey.valueOf("WEBSOCKET_SESSION");
 
+    /**
+     * 路径模板匹配出的变量，路由时设置
+     */
+    public static final AttributeKey<Map<String, String>> PATH_VARIABLES_KEY = AttributeKey.valueOf("WEBSOCKET_PATH_VARIABLES");
+
     private final MethodMapping methodMapping;
+    private final EndpointInstanceProvider instances;
     private final ServerEndpointConfig config;
+    private final Broadcaster broadcaster;
+    private final TopicRegistry topicRegistry;
+    private final SessionIndex sessionIndex;
+    private final EndpointMetrics metrics;
+    /**
+     * heartbeat > 0 时启用
+     */
+    private final Heartbeat heartbeat;
+    /**
+     * 业务线程池，businessThreads > 0 时启用，回调不再在 IO 线程执行
+     */
+    private final ThreadPoolExecutor businessExecutor;
 
     public EndpointServerHandler(MethodMapping methodMapping, ServerEndpointConfig config) {
+        if (config.getOutboundPolicy() == OutboundPolicy.DISCONNECT && config.getUnwritableTimeout() <= 0) {
+            throw new IllegalArgumentException("@ServerEndpoint " + config.getPath() + " outboundPolicy DISCONNECT requires unwritableTimeout > 0");
+        }
         this.methodMapping = methodMapping;
         this.config = config;
+        this.instances = new EndpointInstanceProvider(methodMapping, config.getInstanceStrategy(), config.getInstancePoolSize());
+        this.broadcaster = new Broadcaster(config.getPath());
+        this.topicRegistry = new TopicRegistry();
+        this.sessionIndex = new SessionIndex(config.getIndexes() == null
+                ? Collections.<String>emptyList() : Arrays.asList(config.getIndexes()));
+        if (config.getBusinessThreads() > 0) {
+            // 每个 session 同一时刻最多只有一个任务在线程池队列中，队列长度受连接数约束
+            this.businessExecutor = new ThreadPoolExecutor(config.getBusinessThreads(), config.getBusinessThreads(),
+                    0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new DefaultThreadFactory("NettyServerBusiness", true));
+        } else {
+            this.businessExecutor = null;
+        }
+        this.metrics = new EndpointMetrics(config.getHost(), config.getPort(), config.getPath());
+        this.metrics.gauge("outbound.pending.bytes", this::outboundPendingBytes);
+        this.heartbeat = config.getHeartbeat() > 0 ? new Heartbeat(config.getHeartbeat(), config.getHeartbeatMaxMissed(), metrics) : null;
+        if (businessExecutor != null) {
+            this.metrics.gauge("business.queue.size", () -> businessExecutor.getQueue().size());
+        }
+        if (instances.recycles()) {
+            this.metrics.gauge("instance.pool.idle", instances::idle);
+        }
     }
 
     public void doOnOpen(Channel channel, HandshakeComplete handshake) {
         Object implement = channel.attr(IMPLEMENT_KEY).get();
         if (implement == null) {
             try {
-                implement = methodMapping.getEndpointInstance();// 实例化 @ServerEndpoint的注解类
+                implement = instances.acquire();// 按 instanceStrategy 获取 @ServerEndpoint 的注解类实例
                 channel.attr(IMPLEMENT_KEY).set(implement);
             } catch (Exception e) {
                 logger.error("EndpointServerHandler doOnOpen Instance @ServerEndpoint error: ", e);
                 return;
             }
-            Session session = new Session(channel);
+            Session session = new Session(channel, this);
             channel.attr(SESSION_KEY).set(session);
+            if (businessExecutor != null) {
+                // STREAM 模式下分片不能丢弃，堆积时只暂停读取
+                channel.attr(TASK_QUEUE_KEY).set(new SessionTaskQueue(channel, businessExecutor, config.getSessionQueueSize(),
+                        config.getMessageMode() == MessageMode.STREAM ? OverflowPolicy.PAUSE_READ : config.getOverflowPolicy()));
+            }
+            broadcaster.add(channel);
         }
-        try {
-            Method method = methodMapping.getOnOpen();
-            Object[] args = methodMapping.getOnOpenArgs(channel, handshake);
-            method.invoke(implement, args);
-        } catch (Throwable t) {
-            logger.error("EndpointServerHandler invoke onOpen Method error: ", t);
-        }
+        dispatch(channel, methodMapping.getOnOpenInvoker(), implement, handshake, "onOpen", false, false);
     }
 
     public void doOnMessage(Channel channel, WebSocketFrame frame) {
-        if (methodMapping.getOnMessage() == null) return;
+        if (methodMapping.getOnMessageInvoker() == null) return;
         TextWebSocketFrame textFrame = (TextWebSocketFrame) frame;
         Object implement = channel.attr(IMPLEMENT_KEY).get();
-        try {
-            Method method = methodMapping.getOnMessage();
-            Object[] args = methodMapping.getOnMessageArgs(channel, textFrame);
-            method.invoke(implement, args);
-        } catch (Throwable t) {
-            logger.error("EndpointServerHandler invoke onMessage Method error: ", t);
-        }
+        dispatchMessage(channel, methodMapping.getOnMessageInvoker(), implement, textFrame, "onMessage");
     }
 
     public void doOnBinary(Channel channel, WebSocketFrame frame) {
-        if (methodMapping.getOnBinary() == null) return;
+        if (methodMapping.getOnBinaryInvoker() == null) return;
         BinaryWebSocketFrame binaryWebSocketFrame = (BinaryWebSocketFrame) frame;
         Object implement = channel.attr(IMPLEMENT_KEY).get();
-        try {
-            Method method = methodMapping.getOnBinary();
-            Object[] args = methodMapping.getOnBinaryArgs(channel, binaryWebSocketFrame);
-            method.invoke(implement, args);
-        } catch (Throwable t) {
-            logger.error("EndpointServerHandler invoke onBinary Method error: ", t);
-        }
+        dispatchMessage(channel, methodMapping.getOnBinaryInvoker(), implement, binaryWebSocketFrame, "onBinary");
     }
 
     public void doOnEvent(Channel channel, Object evt) {
         if (methodMapping.getOnEvent() == null) return;
         if (!channel.hasAttr(SESSION_KEY)) return;
         Object implement = channel.attr(IMPLEMENT_KEY).get();
-        try {
-            Method method = methodMapping.getOnEvent();
-            Object[] args = methodMapping.getOnEventArgs(channel, evt);
-            method.invoke(implement, args);
-        } catch (Throwable t) {
-            logger.error("EndpointServerHandler invoke onEvent Method error: ", t);
-        }
+        dispatch(channel, methodMapping.getOnEventInvoker(), implement, evt, "onEvent", false, false);
     }
 
     public void doOnClose(Channel channel) {
-        if (methodMapping.getOnClose() == null) return;
         if (!channel.hasAttr(SESSION_KEY)) return;
         Object implement = channel.attr(IMPLEMENT_KEY).get();
-        try {
-            Method method = methodMapping.getOnClose();
-            Object[] args = methodMapping.getOnCloseArgs(channel);
-            method.invoke(implement, args);
-        } catch (Throwable t) {
-            logger.error("EndpointServerHandler invoke onClose Method error: ", t);
-        }
+        // onClose 是连接的最后一个回调，执行完后归还实例；没有 onClose 时 invoker 为 null，直接归还
+        dispatch(channel, methodMapping.getOnCloseInvoker(), implement, null, "onClose", false, instances.recycles());
     }
 
     public void doOnError(Channel channel, Throwable throwable) {
         if (methodMapping.getOnError() == null) return;
         if (!channel.hasAttr(SESSION_KEY)) return;
         Object implement = channel.attr(IMPLEMENT_KEY).get();
+        dispatch(channel, methodMapping.getOnErrorInvoker(), implement, throwable, "onError", false, false);
+    }
+
+    /**
+     * 分片消息整条投递或整条丢弃：首帧按 overflowPolicy 可以丢弃，首帧被丢弃时后续分片一并丢弃，
+     * 首帧入队后后续分片不再丢弃，避免分片路由等状态停留在半条消息上
+     */
+    private void dispatchMessage(Channel channel, MethodInvoker invoker, Object implement, WebSocketFrame frame, String callback) {
+        if (businessExecutor == null) {
+            dispatch(channel, invoker, implement, frame, callback, false, false);
+            return;
+        }
+        Boolean dropped = frame.isFinalFragment() ? channel.attr(FRAGMENT_DROPPED_KEY).getAndSet(null) : channel.attr(FRAGMENT_DROPPED_KEY).get();
+        if (dropped == null) {
+            boolean queued = dispatch(channel, invoker, implement, frame, callback, true, false);
+            if (!frame.isFinalFragment()) {
+                channel.attr(FRAGMENT_DROPPED_KEY).set(!queued);
+            }
+        } else if (!dropped) {
+            dispatch(channel, invoker, implement, frame, callback, false, false);
+        }
+    }
+
+    /**
+     * 在 IO 线程直接调用，或者放入 session 的串行队列交给业务线程池；
+     * 放入队列的 frame 会被 retain，回调结束后释放
+     *
+     * @param release 回调结束后把 implement 归还给实例池
+     * @return {@code false} 回调按 overflowPolicy 被丢弃
+     */
+    private boolean dispatch(final Channel channel, final MethodInvoker invoker, final Object implement, final Object object,
+                             final String callback, boolean droppable, final boolean release) {
+        if (invoker == null) {
+            if (release) instances.release(implement);
+            return true;
+        }
+        SessionTaskQueue queue = businessExecutor == null ? null : channel.attr(TASK_QUEUE_KEY).get();
+        if (queue == null) {
+            try {
+                invoke(channel, invoker, implement, object, callback);
+            } finally {
+                if (release) instances.release(implement);
+            }
+            return true;
+        }
+        ReferenceCountUtil.retain(object);
+        boolean queued = queue.offer(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    invoke(channel, invoker, implement, object, callback);
+                } finally {
+                    ReferenceCountUtil.release(object);
+                    if (release) instances.release(implement);
+                }
+            }
+        }, droppable);
+        if (!queued) {
+            ReferenceCountUtil.release(object);
+            if (release) instances.release(implement);
+        }
+        return queued;
+    }
+
+    private void invoke(Channel channel, MethodInvoker invoker, Object implement, Object object, String callback) {
+        long start = System.nanoTime();
         try {
-            Method method = methodMapping.getOnError();
-            Object[] args = methodMapping.getOnErrorArgs(channel, throwable);
-            method.invoke(implement, args);
+            invoker.invoke(implement, channel, object);
         } catch (Throwable t) {
-            logger.error("EndpointServerHandler invoke onError Method error: ", t);
+            metrics.error();
+            logger.error("EndpointServerHandler invoke " + callback + " Method error: ", t);
+        } finally {
+            metrics.callback(callback, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 所有连接 ChannelOutboundBuffer 中待写出的字节数，抓取指标时计算
+     */
+    private long outboundPendingBytes() {
+        long pending = 0;
+        for (Channel channel : broadcaster.channels()) {
+            ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+            if (buffer != null) {
+                pending += buffer.totalPendingWriteBytes();
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * 关闭业务线程池，停止心跳
+     */
+    public void close() {
+        if (businessExecutor != null) {
+            businessExecutor.shutdown();
         }
+        if (heartbeat != null) {
+            heartbeat.stop();
+        }
+    }
+
+    public OutboundPolicy getOutboundPolicy() {
+        return config.getOutboundPolicy();
+    }
+
+    public Broadcaster getBroadcaster() {
+        return broadcaster;
+    }
+
+    public TopicRegistry getTopicRegistry() {
+        return topicRegistry;
+    }
+
+    public SessionIndex getSessionIndex() {
+        return sessionIndex;
+    }
+
+    /**
+     * 按 ChannelId 查找已完成握手的 session，O(1)
+     */
+    public Session getSession(ChannelId id) {
+        Channel channel = broadcaster.channels().find(id);
+        return channel == null ? null : channel.attr(SESSION_KEY).get();
+    }
+
+    public MessageCodecs getCodecs() {
+        return methodMapping.getCodecs();
+    }
+
+    public EndpointMetrics getMetrics() {
+        return metrics;
+    }
+
+    public Heartbeat getHeartbeat() {
+        return heartbeat;
     }
 
     public String getHost() {
@@ -0,0 +1,57 @@
+package com.melot.websocket.handler;
+
+import com.melot.websocket.model.FileFrame;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * 把 {@link FileFrame} 拆成帧头和 FileRegion 两次写，所有连接共用一个实例。
+ * <p>
+ * 只在连接第一次发送文件时加入 pipeline，位于下行统计之后，之前的 handler 都把 FileFrame 当作一条消息处理
+ */
+@ChannelHandler.Sharable
+public class FileFrameEncoder extends ChannelOutboundHandlerAdapter {
+    private static final String NAME = "file-frame-encoder";
+    private static final String BASE = "outbound-metrics-handler";
+    private static final FileFrameEncoder INSTANCE = new FileFrameEncoder();
+
+    /**
+     * 在连接的 EventLoop 中加入 pipeline，之后从同一线程发起的写入都排在它之后
+     */
+    public static void install(Channel channel) {
+        final ChannelPipeline pipeline = channel.pipeline();
+        if (pipeline.context(NAME) != null) {
+            return;
+        }
+        if (channel.eventLoop().inEventLoop()) {
+            add(pipeline);
+        } else {
+            channel.eventLoop().execute(() -> add(pipeline));
+        }
+    }
+
+    private static void add(ChannelPipeline pipeline) {
+        if (pipeline.context(NAME) == null && pipeline.context(BASE) != null) {
+            pipeline.addBefore(BASE, NAME, INSTANCE);
+        }
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof FileFrame)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        FileFrame frame = (FileFrame) msg;
+        try {
+            ctx.write(frame.header().retain());
+            ctx.write(frame.region().retain(), promise);
+        } finally {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.melot.websocket.handler;
+
+import com.melot.websocket.metrics.EndpointMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务端 ping/pong 心跳。
+ * <p>
+ * 每个 EventLoop 只有一个定时任务，按 heartbeat 间隔给该 EventLoop 上所有已握手的连接发送 ping，
+ * ping 的 payload 是发送时的 nanoTime，收到回显的 pong 后计算 RTT。上一个 ping 未回 pong 时不再发新的 ping，
+ * 避免 RTT 大于间隔的连接永远匹配不上；ping 发出后连续 maxMissed 个间隔没有收到 pong 则断开连接。
+ * 连接状态只在所属 EventLoop 中读写，不需要加锁。
+ */
+public class Heartbeat {
+    private static final Logger logger = LoggerFactory.getLogger(Heartbeat.class);
+
+    private static final AttributeKey<State> STATE_KEY = AttributeKey.valueOf("WEBSOCKET_HEARTBEAT");
+
+    private final long interval;
+    private final int maxMissed;
+    private final EndpointMetrics metrics;
+    private final ConcurrentMap<EventLoop, LoopHeartbeat> loops = new ConcurrentHashMap<>();
+
+    /**
+     * @param interval  ping 间隔毫秒数
+     * @param maxMissed 连续未收到 pong 的次数上限
+     */
+    public Heartbeat(long interval, int maxMissed, EndpointMetrics metrics) {
+        this.interval = interval;
+        this.maxMissed = Math.max(maxMissed, 1);
+        this.metrics = metrics;
+    }
+
+    /**
+     * 握手完成时在连接的 EventLoop 中调用
+     */
+    public void register(Channel channel) {
+        State state = new State();
+        channel.attr(STATE_KEY).set(state);
+        loops.computeIfAbsent(channel.eventLoop(), LoopHeartbeat::new).channels.put(channel, state);
+    }
+
+    /**
+     * 连接关闭时在连接的 EventLoop 中调用
+     */
+    public void unregister(Channel channel) {
+        LoopHeartbeat loop = loops.get(channel.eventLoop());
+        if (loop != null) {
+            loop.channels.remove(channel);
+        }
+    }
+
+    /**
+     * 收到 pong，payload 与最近一次 ping 一致时记录 RTT
+     */
+    public void pong(Channel channel, PongWebSocketFrame frame) {
+        State state = channel.attr(STATE_KEY).get();
+        ByteBuf content = frame.content();
+        if (state == null || !state.outstanding || content.readableBytes() != 8) {
+            return;
+        }
+        if (content.getLong(content.readerIndex()) != state.pingNanos) {
+            return;
+        }
+        long rtt = System.nanoTime() - state.pingNanos;
+        state.outstanding = false;
+        state.missed = 0;
+        state.rtt = rtt;
+        metrics.heartbeatRtt(rtt);
+    }
+
+    /**
+     * 最近一次测得的 RTT(纳秒)，尚未测得时返回 -1
+     */
+    public static long rtt(Channel channel) {
+        State state = channel.attr(STATE_KEY).get();
+        return state == null ? -1 : state.rtt;
+    }
+
+    public void stop() {
+        for (LoopHeartbeat loop : loops.values()) {
+            loop.future.cancel(false);
+        }
+        loops.clear();
+    }
+
+    private final class LoopHeartbeat implements Runnable {
+        /**
+         * 只在 EventLoop 线程中访问
+         */
+        private final Map<Channel, State> channels = new HashMap<>();
+        private final ScheduledFuture<?> future;
+
+        LoopHeartbeat(EventLoop loop) {
+            this.future = loop.scheduleAtFixedRate(this, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (channels.isEmpty()) {
+                return;
+            }
+            long now = System.nanoTime();
+            // 关闭连接会同步触发 unregister，先取快照
+            for (Map.Entry<Channel, State> entry : new ArrayList<>(channels.entrySet())) {
+                Channel channel = entry.getKey();
+                State state = entry.getValue();
+                if (state.outstanding) {
+                    if (++state.missed >= maxMissed) {
+                        metrics.heartbeatTimeout();
+                        logger.warn("Close channel " + channel.id() + ", cause: missed " + state.missed + " heartbeat pongs");
+                        channel.close();
+                    }
+                    continue;
+                }
+                state.pingNanos = now;
+                state.outstanding = true;
+                ByteBuf payload = channel.alloc().buffer(8).writeLong(now);
+                channel.writeAndFlush(new PingWebSocketFrame(payload), channel.voidPromise());
+            }
+        }
+    }
+
+    private static final class State {
+        private long pingNanos;
+        private boolean outstanding;
+        private int missed;
+        private volatile long rtt = -1;
+    }
+}
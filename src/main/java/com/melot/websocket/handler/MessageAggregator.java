@@ -0,0 +1,36 @@
+package com.melot.websocket.handler;
+
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link com.melot.websocket.model.MessageMode#AGGREGATE} 模式下把分片聚合成完整消息，每个连接一个实例；
+ * 超过上限时以 1009 关闭连接，不再把异常交给 onError
+ */
+public class MessageAggregator extends WebSocketFrameAggregator {
+    private static final Logger logger = LoggerFactory.getLogger(MessageAggregator.class);
+
+    /**
+     * RFC 6455 Message Too Big
+     */
+    private static final int MESSAGE_TOO_BIG = 1009;
+
+    /**
+     * @param maxMessageSize 聚合后消息的最大字节数
+     */
+    public MessageAggregator(int maxMessageSize) {
+        super(maxMessageSize);
+    }
+
+    @Override
+    protected void handleOversizedMessage(ChannelHandlerContext ctx, WebSocketFrame oversized) throws Exception {
+        logger.warn("Close channel " + ctx.channel().id() + ", cause: message greater than " + maxContentLength() + " bytes");
+        ctx.writeAndFlush(new CloseWebSocketFrame(MESSAGE_TOO_BIG, "message too big"))
+                .addListener(ChannelFutureListener.CLOSE);
+    }
+}
@@ -0,0 +1,76 @@
+package com.melot.websocket.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.util.List;
+
+/**
+ * {@link com.melot.websocket.model.MessageMode#FRAME}/{@link com.melot.websocket.model.MessageMode#STREAM} 模式下 text 分片的 UTF-8 边界对齐，每个连接一个实例。
+ * <p>
+ * 非最后一帧末尾不完整的 UTF-8 字符(最多 3 字节)移到下一帧开头，保证每个分片都能单独解码成字符串；
+ * binary 分片原样传递
+ */
+public class MessageStreamHandler extends MessageToMessageDecoder<WebSocketFrame> {
+    /**
+     * 以下字段只在连接的 EventLoop 中访问
+     */
+    private boolean text;
+    private ByteBuf carry;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, WebSocketFrame frame, List<Object> out) throws Exception {
+        boolean textFragment = frame instanceof TextWebSocketFrame || (frame instanceof ContinuationWebSocketFrame && text);
+        if (frame instanceof TextWebSocketFrame || frame instanceof ContinuationWebSocketFrame) {
+            text = textFragment && !frame.isFinalFragment();
+        }
+        if (!textFragment || (carry == null && frame.isFinalFragment())) {
+            out.add(frame.retain());
+            return;
+        }
+        ByteBuf content = frame.content().retain();
+        if (carry != null) {
+            content = ctx.alloc().compositeBuffer(2).addComponents(true, carry, content);
+            carry = null;
+        }
+        if (!frame.isFinalFragment()) {
+            int tail = incompleteTail(content);
+            if (tail > 0) {
+                int index = content.writerIndex() - tail;
+                carry = ctx.alloc().buffer(4).writeBytes(content, index, tail);
+                content.writerIndex(index);
+            }
+        }
+        out.add(frame.replace(content));
+    }
+
+    /**
+     * @return 末尾不完整 UTF-8 字符的字节数
+     */
+    static int incompleteTail(ByteBuf content) {
+        int end = content.writerIndex();
+        int max = Math.min(3, content.readableBytes());
+        for (int i = 1; i <= max; i++) {
+            int b = content.getByte(end - i) & 0xFF;
+            if ((b & 0xC0) == 0x80) {
+                continue;
+            }
+            int length = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            return length > i ? i : 0;
+        }
+        return 0;
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (carry != null) {
+            carry.release();
+            carry = null;
+        }
+        super.handlerRemoved(ctx);
+    }
+}
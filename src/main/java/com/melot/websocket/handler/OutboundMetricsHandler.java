@@ -0,0 +1,51 @@
+package com.melot.websocket.handler;
+
+import com.melot.websocket.metrics.EndpointMetrics;
+import com.melot.websocket.model.FileFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * 统计写出的帧数、字节数和写失败次数，所有连接共用一个实例。
+ * <p>
+ * 位于慢消费者保护之后，被丢弃的消息不计入；voidPromise 的写失败经 exceptionCaught 计入 errors
+ */
+@ChannelHandler.Sharable
+public class OutboundMetricsHandler extends ChannelOutboundHandlerAdapter {
+    private final EndpointMetrics metrics;
+    private final ChannelFutureListener failureListener;
+
+    public OutboundMetricsHandler(final EndpointMetrics metrics) {
+        this.metrics = metrics;
+        this.failureListener = new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    metrics.writeFailed();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof WebSocketFrame) {
+            metrics.frameOut(((WebSocketFrame) msg).content().readableBytes());
+        } else if (msg instanceof ByteBuf) {
+            // 预编码的 PreparedFrame
+            metrics.frameOut(((ByteBuf) msg).readableBytes());
+        } else if (msg instanceof FileFrame) {
+            metrics.frameOut(((FileFrame) msg).length());
+        }
+        if (!promise.isVoid()) {
+            promise.addListener(failureListener);
+        }
+        ctx.write(msg, promise);
+    }
+}
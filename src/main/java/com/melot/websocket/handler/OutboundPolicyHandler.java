@@ -0,0 +1,204 @@
+package com.melot.websocket.handler;
+
+import com.melot.websocket.metrics.EndpointMetrics;
+import com.melot.websocket.model.ConflatedMessage;
+import com.melot.websocket.model.OutboundPolicy;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 慢消费者保护，每个连接一个实例。
+ * <p>
+ * 连接不可写时按 {@link OutboundPolicy} 丢弃、暂存或合并新消息，不再无限堆积在 ChannelOutboundBuffer 中；
+ * 恢复可写后按顺序写出暂存的消息。unwritableTimeout 大于0时，持续不可写超过该时间断开连接。
+ */
+public class OutboundPolicyHandler extends ChannelDuplexHandler {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundPolicyHandler.class);
+
+    private static final ClosedChannelException DROPPED = new ClosedChannelException();
+
+    static {
+        DROPPED.setStackTrace(new StackTraceElement[0]);
+    }
+
+    private final OutboundPolicy policy;
+    private final int queueSize;
+    private final long unwritableTimeout;
+    private final EndpointMetrics metrics;
+
+    /**
+     * 以下字段只在连接的 EventLoop 中访问
+     */
+    private final ArrayDeque<PendingWrite> pending = new ArrayDeque<>();
+    private Map<Object, PendingWrite> conflated;
+    private ScheduledFuture<?> timeoutFuture;
+
+    public OutboundPolicyHandler(OutboundPolicy policy, int queueSize, long unwritableTimeout, EndpointMetrics metrics) {
+        this.policy = policy;
+        this.queueSize = queueSize;
+        this.unwritableTimeout = unwritableTimeout;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        Object key = null;
+        if (msg instanceof ConflatedMessage) {
+            key = ((ConflatedMessage) msg).key();
+            msg = ((ConflatedMessage) msg).message();
+        }
+        if (pending.isEmpty() && ctx.channel().isWritable()) {
+            ctx.write(msg, promise);
+            return;
+        }
+        switch (policy) {
+            case DROP_NEWEST:
+                drop(msg, promise);
+                break;
+            case DROP_OLDEST:
+                if (pending.size() >= queueSize) {
+                    PendingWrite oldest = pending.poll();
+                    drop(oldest.msg, oldest.promise);
+                }
+                pending.add(new PendingWrite(null, msg, promise));
+                break;
+            case CONFLATE:
+                if (key != null) {
+                    if (conflated == null) {
+                        conflated = new HashMap<>();
+                    }
+                    PendingWrite previous = conflated.get(key);
+                    if (previous != null) {
+                        // 保持原有位置，只替换为最新内容
+                        drop(previous.msg, previous.promise);
+                        previous.msg = msg;
+                        previous.promise = promise;
+                        break;
+                    }
+                    if (pending.size() >= queueSize) {
+                        drop(msg, promise);
+                        break;
+                    }
+                    PendingWrite write = new PendingWrite(key, msg, promise);
+                    conflated.put(key, write);
+                    pending.add(write);
+                } else if (pending.size() >= queueSize) {
+                    drop(msg, promise);
+                } else {
+                    pending.add(new PendingWrite(null, msg, promise));
+                }
+                break;
+            default:
+                ctx.write(msg, promise);
+                break;
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            cancelTimeout();
+            drain(ctx);
+        } else if (timeoutFuture == null && unwritableTimeout > 0) {
+            final ChannelHandlerContext context = ctx;
+            timeoutFuture = ctx.executor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    timeoutFuture = null;
+                    if (!context.channel().isWritable()) {
+                        logger.warn("Close channel " + context.channel().id() + ", cause: unwritable longer than " + unwritableTimeout + "ms");
+                        context.close();
+                    }
+                }
+            }, unwritableTimeout, TimeUnit.MILLISECONDS);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        cancelTimeout();
+        discardAll();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        cancelTimeout();
+        discardAll();
+    }
+
+    /**
+     * 暂存中的消息数
+     */
+    public int pendingSize() {
+        return pending.size();
+    }
+
+    private void drain(ChannelHandlerContext ctx) {
+        boolean written = false;
+        while (ctx.channel().isWritable()) {
+            PendingWrite write = pending.poll();
+            if (write == null) {
+                break;
+            }
+            if (write.key != null) {
+                conflated.remove(write.key);
+            }
+            ctx.write(write.msg, write.promise);
+            written = true;
+        }
+        if (written) {
+            ctx.flush();
+        }
+    }
+
+    private void discardAll() {
+        PendingWrite write;
+        while ((write = pending.poll()) != null) {
+            drop(write.msg, write.promise);
+        }
+        if (conflated != null) {
+            conflated.clear();
+        }
+    }
+
+    private void cancelTimeout() {
+        if (timeoutFuture != null) {
+            timeoutFuture.cancel(false);
+            timeoutFuture = null;
+        }
+    }
+
+    private void drop(Object msg, ChannelPromise promise) {
+        metrics.messageDropped();
+        ReferenceCountUtil.release(msg);
+        // voidPromise 失败会触发 exceptionCaught，丢弃不算异常
+        if (!promise.isVoid()) {
+            promise.tryFailure(DROPPED);
+        }
+    }
+
+    private static final class PendingWrite {
+        private final Object key;
+        private Object msg;
+        private ChannelPromise promise;
+
+        PendingWrite(Object key, Object msg, ChannelPromise promise) {
+            this.key = key;
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.melot.websocket.handler;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+
+/**
+ * 在 WebSocketServerProtocolHandler 丢弃 pong 之前把它交给 {@link Heartbeat}
+ */
+@ChannelHandler.Sharable
+public class PongHandler extends ChannelInboundHandlerAdapter {
+    private final Heartbeat heartbeat;
+
+    public PongHandler(Heartbeat heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof PongWebSocketFrame) {
+            PongWebSocketFrame frame = (PongWebSocketFrame) msg;
+            try {
+                heartbeat.pong(ctx.channel(), frame);
+            } finally {
+                frame.release();
+            }
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+}
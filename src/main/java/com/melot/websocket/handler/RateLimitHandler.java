@@ -0,0 +1,130 @@
+package com.melot.websocket.handler;
+
+import com.melot.websocket.metrics.EndpointMetrics;
+import com.melot.websocket.model.RateLimitPolicy;
+import com.melot.websocket.utils.TokenBucket;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个 session 的入站限流，每个连接一个实例，位于 {@link WebsocketServerHandler} 之前。
+ * <p>
+ * 按帧数和字节数两个令牌桶限制每秒收到的数据帧(ping/pong/close 已在前面处理，不计入)，桶容量为一秒的配额；
+ * 超出时按 {@link RateLimitPolicy} 处理。PAUSE_READ 与 session 队列积压共用 {@link ReadPause}，两者都解除后才恢复读取。
+ * DROP/CLOSE 按整条消息丢弃：分片消息在首帧决定是否丢弃，被丢弃时后续分片直到最后一帧一并丢弃，放行时后续分片照常扣令牌但不再丢弃
+ */
+public class RateLimitHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitHandler.class);
+
+    /**
+     * RFC 6455 Policy Violation
+     */
+    private static final int POLICY_VIOLATION = 1008;
+
+    private final RateLimitPolicy policy;
+    private final EndpointMetrics metrics;
+
+    /**
+     * 以下字段只在连接的 EventLoop 中访问
+     */
+    private final TokenBucket frameBucket;
+    private final TokenBucket byteBucket;
+    private boolean paused;
+    private boolean closing;
+    /**
+     * 正在接收的分片消息是否被丢弃，没有未结束的分片消息时为 null
+     */
+    private Boolean droppingMessage;
+
+    /**
+     * @param messageRate 每秒帧数，0 表示不限制
+     * @param byteRate    每秒字节数，0 表示不限制
+     */
+    public RateLimitHandler(int messageRate, int byteRate, RateLimitPolicy policy, EndpointMetrics metrics) {
+        this.frameBucket = messageRate > 0 ? new TokenBucket(messageRate, messageRate) : null;
+        this.byteBucket = byteRate > 0 ? new TokenBucket(byteRate, byteRate) : null;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof WebSocketFrame)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        int bytes = ((WebSocketFrame) msg).content().readableBytes();
+        if (policy == RateLimitPolicy.PAUSE_READ) {
+            long wait = 0;
+            if (frameBucket != null) {
+                wait = frameBucket.acquire(1);
+            }
+            if (byteBucket != null) {
+                wait = Math.max(wait, byteBucket.acquire(bytes));
+            }
+            ctx.fireChannelRead(msg);
+            if (wait > 0) {
+                pause(ctx, wait);
+            }
+            return;
+        }
+        WebSocketFrame frame = (WebSocketFrame) msg;
+        boolean drop;
+        if (frame instanceof ContinuationWebSocketFrame && droppingMessage != null) {
+            drop = droppingMessage;
+            if (!drop) {
+                charge(bytes);
+            }
+        } else {
+            // 两个桶都有余额时才扣除，避免一个桶拒绝时另一个桶的令牌被白白扣掉
+            drop = (frameBucket != null && !frameBucket.canAcquire()) || (byteBucket != null && !byteBucket.canAcquire());
+            if (!drop) {
+                charge(bytes);
+            }
+        }
+        droppingMessage = frame.isFinalFragment() ? null : drop;
+        if (!drop) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        ReferenceCountUtil.release(msg);
+        metrics.frameRateLimited();
+        if (policy == RateLimitPolicy.CLOSE && !closing) {
+            closing = true;
+            logger.warn("Close channel " + ctx.channel().id() + ", cause: rate limit exceeded");
+            ctx.writeAndFlush(new CloseWebSocketFrame(POLICY_VIOLATION, "rate limit exceeded"))
+                    .addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    private void charge(int bytes) {
+        if (frameBucket != null) {
+            frameBucket.acquire(1);
+        }
+        if (byteBucket != null) {
+            byteBucket.acquire(bytes);
+        }
+    }
+
+    private void pause(final ChannelHandlerContext ctx, long nanos) {
+        metrics.frameRateLimited();
+        if (paused) {
+            return;
+        }
+        paused = true;
+        ReadPause.pause(ctx.channel(), ReadPause.RATE_LIMIT);
+        ctx.executor().schedule(() -> {
+            paused = false;
+            ReadPause.resume(ctx.channel(), ReadPause.RATE_LIMIT);
+        }, nanos, TimeUnit.NANOSECONDS);
+    }
+}
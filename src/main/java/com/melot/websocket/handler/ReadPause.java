@@ -0,0 +1,58 @@
+package com.melot.websocket.handler;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 连接暂停读取的原因，按位记录在 channel 属性上。
+ * <p>
+ * 限流和 session 队列积压都会关闭 autoRead，各自只解除自己的原因，全部原因解除后才恢复读取；
+ * autoRead 统一在连接的 EventLoop 中按当前原因设置，业务线程并发暂停/恢复时以最后的状态为准
+ */
+final class ReadPause {
+    static final int RATE_LIMIT = 1;
+    static final int SESSION_QUEUE = 1 << 1;
+
+    private static final AttributeKey<AtomicInteger> REASONS_KEY = AttributeKey.valueOf("WEBSOCKET_READ_PAUSE");
+
+    private ReadPause() {
+    }
+
+    static void pause(Channel channel, int reason) {
+        AtomicInteger reasons = reasons(channel);
+        int previous = reasons.getAndUpdate(r -> r | reason);
+        if ((previous & reason) == 0) {
+            apply(channel, reasons);
+        }
+    }
+
+    static void resume(Channel channel, int reason) {
+        AtomicInteger reasons = reasons(channel);
+        int previous = reasons.getAndUpdate(r -> r & ~reason);
+        if ((previous & reason) != 0) {
+            apply(channel, reasons);
+        }
+    }
+
+    private static void apply(Channel channel, AtomicInteger reasons) {
+        if (channel.eventLoop().inEventLoop()) {
+            channel.config().setAutoRead(reasons.get() == 0);
+        } else {
+            channel.eventLoop().execute(() -> channel.config().setAutoRead(reasons.get() == 0));
+        }
+    }
+
+    private static AtomicInteger reasons(Channel channel) {
+        AtomicInteger reasons = channel.attr(REASONS_KEY).get();
+        if (reasons == null) {
+            AtomicInteger newReasons = new AtomicInteger();
+            reasons = channel.attr(REASONS_KEY).setIfAbsent(newReasons);
+            if (reasons == null) {
+                reasons = newReasons;
+            }
+        }
+        return reasons;
+    }
+}
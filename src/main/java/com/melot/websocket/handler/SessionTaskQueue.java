@@ -0,0 +1,113 @@
+package com.melot.websocket.handler;
+
+import com.melot.websocket.model.OverflowPolicy;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个 session 的串行任务队列，回调在业务线程池中按到达顺序逐个执行，同一时刻最多占用一个业务线程
+ */
+class SessionTaskQueue implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(SessionTaskQueue.class);
+
+    /**
+     * 每次调度最多连续执行的任务数，避免单个 session 长期占用线程
+     */
+    private static final int MAX_BATCH = 64;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean paused = new AtomicBoolean();
+
+    private final Channel channel;
+    private final Executor executor;
+    private final int limit;
+    private final OverflowPolicy policy;
+
+    SessionTaskQueue(Channel channel, Executor executor, int limit, OverflowPolicy policy) {
+        this.channel = channel;
+        this.executor = executor;
+        this.limit = limit;
+        this.policy = policy;
+    }
+
+    /**
+     * @param droppable 消息类回调可以按策略丢弃，生命周期回调(open/close/error)总是入队
+     * @return {@code false} 任务被丢弃
+     */
+    boolean offer(Runnable task, boolean droppable) {
+        int pending = size.incrementAndGet();
+        if (droppable && limit > 0 && pending > limit) {
+            switch (policy) {
+                case DROP:
+                    size.decrementAndGet();
+                    return false;
+                case CLOSE:
+                    size.decrementAndGet();
+                    logger.warn("Close channel " + channel.id() + ", cause: pending callbacks greater than " + limit);
+                    channel.close();
+                    return false;
+                case PAUSE_READ:
+                default:
+                    if (paused.compareAndSet(false, true)) {
+                        ReadPause.pause(channel, ReadPause.SESSION_QUEUE);
+                    }
+                    break;
+            }
+        }
+        tasks.offer(task);
+        schedule();
+        return true;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                logger.error("SessionTaskQueue schedule for channel " + channel.id() + " rejected: ", e);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (int i = 0; i < MAX_BATCH; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    logger.error("SessionTaskQueue run task error: ", t);
+                } finally {
+                    int pending = size.decrementAndGet();
+                    if (pending <= limit / 2 && paused.compareAndSet(true, false)) {
+                        ReadPause.resume(channel, ReadPause.SESSION_QUEUE);
+                    }
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -1,96 +1,241 @@
 package com.melot.websocket.handler;
 
-import com.melot.websocket.utils.NetUtils;
+import com.melot.websocket.metrics.EndpointMetrics;
+import com.melot.websocket.model.WritabilityEvent;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelId;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.websocketx.*;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.InetSocketAddress;
 import java.util.Map;
-import java.util.concurrent.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @io.netty.channel.ChannelHandler.Sharable
 public class WebsocketServerHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
     private static Logger logger = LoggerFactory.getLogger(WebsocketServerHandler.class);
 
-    private final Map<String, Channel> channels = new ConcurrentHashMap<String, Channel>();
-    private final ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
-    private final CopyOnWriteArrayList<Channel> UN_COMPLETE_HANDSHAKER_CHANNELS = new CopyOnWriteArrayList<>();
-    private final AttributeKey<Long> ACTIVE_TIME_ATTR_KEY = AttributeKey.valueOf("activeTime");
-    private int accepts;
+    private static final int DEFAULT_HANDSHAKE_TIMEOUT = 30000;
+
+    /**
+     * 所有 endpoint 共用的握手超时时间轮，建连、握手完成时的登记和取消都是 O(1)
+     */
+    private static final HashedWheelTimer HANDSHAKE_TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("NettyServerHandshakeTimer", true), 100, TimeUnit.MILLISECONDS);
+
+    /**
+     * netty 握手 handler 完成后替换成的 handler 名
+     */
+    private static final String WS_403_RESPONDER = "WS403Responder";
+    private static final AttributeKey<Long> ACTIVE_TIME_ATTR_KEY = AttributeKey.valueOf("activeTime");
+    private static final AttributeKey<Timeout> HANDSHAKE_TIMEOUT_ATTR_KEY = AttributeKey.valueOf("handshakeTimeout");
+    /**
+     * 未结束的分片消息是否为 text，收到最后一帧时清除
+     */
+    private static final AttributeKey<Boolean> FRAGMENTED_TEXT_ATTR_KEY = AttributeKey.valueOf("fragmentedText");
+
+    private final Map<ChannelId, Channel> channels = new ConcurrentHashMap<ChannelId, Channel>();
+    private final long handshakeTimeout;
     private EndpointServerHandler handler;
+    private final EndpointMetrics metrics;
+
+    public WebsocketServerHandler(EndpointServerHandler handler) {
+        this(handler, DEFAULT_HANDSHAKE_TIMEOUT);
+    }
 
-    public WebsocketServerHandler(EndpointServerHandler handler, int accepts) {
+    /**
+     * 连接数控制(accepts)由 server channel 上的 {@link com.melot.websocket.netty.AcceptLimitHandler} 负责
+     *
+     * @param handshakeTimeout 握手超时毫秒数，0 表示不限制
+     */
+    public WebsocketServerHandler(EndpointServerHandler handler, long handshakeTimeout) {
         this.handler = handler;
-        this.accepts = accepts;
-        startTimeoutTask();
+        this.handshakeTimeout = handshakeTimeout;
+        this.metrics = handler.getMetrics();
     }
 
-    public void channelActive(ChannelHandlerContext ctx) throws Exception {
-        Channel channel = ctx.channel();
-        // connection control
-        if (accepts > 0 && channels.size() > accepts) {
-            logger.error("Close channel " + channel.id() + ", cause: The server " + NetUtils.toAddressString((InetSocketAddress) channel.localAddress()) + " connections greater than max config " + accepts);
-            channel.close();
+    /**
+     * 按路径路由时握手请求到达后才加入 pipeline，此时 channelActive 已经触发过
+     */
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isActive()) {
+            activate(ctx.channel());
         }
-        channels.put(NetUtils.toAddressString((InetSocketAddress) ctx.channel().remoteAddress()), ctx.channel());
-        ctx.channel().attr(ACTIVE_TIME_ATTR_KEY).set(System.currentTimeMillis());
-        UN_COMPLETE_HANDSHAKER_CHANNELS.add(ctx.channel());
+    }
+
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        activate(ctx.channel());
         super.channelActive(ctx);
     }
 
+    private void activate(Channel channel) {
+        if (channels.putIfAbsent(channel.id(), channel) != null) {
+            return;
+        }
+        metrics.connectionOpened();
+        watchHandshake(channel, handshakeTimeout);
+    }
+
+    /**
+     * 记录建连时间并登记握手超时，重复调用时以第一次为准
+     *
+     * @param handshakeTimeout 握手超时毫秒数，0 表示不限制
+     */
+    public static void watchHandshake(Channel channel, long handshakeTimeout) {
+        channel.attr(ACTIVE_TIME_ATTR_KEY).setIfAbsent(System.nanoTime());
+        if (handshakeTimeout > 0 && channel.attr(HANDSHAKE_TIMEOUT_ATTR_KEY).get() == null) {
+            channel.attr(HANDSHAKE_TIMEOUT_ATTR_KEY).set(HANDSHAKE_TIMER.newTimeout(new HandshakeTimeoutTask(channel, handshakeTimeout), handshakeTimeout, TimeUnit.MILLISECONDS));
+        }
+    }
+
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) throws Exception {
+        metrics.frameIn(frame.content().readableBytes());
+        Channel ch = ctx.channel();
         if (frame instanceof TextWebSocketFrame) {
-            handler.doOnMessage(ctx.channel(), frame);
+            if (!frame.isFinalFragment()) ch.attr(FRAGMENTED_TEXT_ATTR_KEY).set(Boolean.TRUE);
+            handler.doOnMessage(ch, frame);
         } else if (frame instanceof BinaryWebSocketFrame) {
-            handler.doOnBinary(ctx.channel(), frame);
+            if (!frame.isFinalFragment()) ch.attr(FRAGMENTED_TEXT_ATTR_KEY).set(Boolean.FALSE);
+            handler.doOnBinary(ch, frame);
+        } else if (frame instanceof ContinuationWebSocketFrame) {
+            onContinuation(ch, frame);
+        }
+    }
+
+    /**
+     * continuation 帧按所属消息的类型转换后回调，协议解码已保证它前面有未结束的 text/binary 帧
+     */
+    private void onContinuation(Channel ch, WebSocketFrame frame) {
+        Boolean text = frame.isFinalFragment() ? ch.attr(FRAGMENTED_TEXT_ATTR_KEY).getAndSet(null) : ch.attr(FRAGMENTED_TEXT_ATTR_KEY).get();
+        if (text == null) {
+            return;
+        }
+        ByteBuf content = frame.content().retain();
+        WebSocketFrame fragment = text ? new TextWebSocketFrame(frame.isFinalFragment(), frame.rsv(), content)
+                : new BinaryWebSocketFrame(frame.isFinalFragment(), frame.rsv(), content);
+        try {
+            if (text) {
+                handler.doOnMessage(ch, fragment);
+            } else {
+                handler.doOnBinary(ch, fragment);
+            }
+        } finally {
+            fragment.release();
         }
     }
 
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
         Channel ch = ctx.channel();
         if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
-            UN_COMPLETE_HANDSHAKER_CHANNELS.remove(ch);
+            cancelHandshakeTimeout(ch);
+            Long activeTime = ch.attr(ACTIVE_TIME_ATTR_KEY).getAndSet(null);
+            if (activeTime != null) {
+                metrics.handshakeCompleted(System.nanoTime() - activeTime);
+            }
+            if (handler.getHeartbeat() != null) {
+                handler.getHeartbeat().register(ch);
+            }
+            removeHandshakeHandlers(ch);
             handler.doOnOpen(ch, (WebSocketServerProtocolHandler.HandshakeComplete) evt);
         } else if (evt instanceof IdleStateEvent) {
             handler.doOnEvent(ch, evt);
         }
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        Channel ch = ctx.channel();
+        handler.doOnEvent(ch, ch.isWritable() ? WritabilityEvent.WRITABLE : WritabilityEvent.UNWRITABLE);
+        super.channelWritabilityChanged(ctx);
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-        UN_COMPLETE_HANDSHAKER_CHANNELS.remove(ctx.channel());
-        channels.remove(NetUtils.toAddressString((InetSocketAddress) ctx.channel().remoteAddress()));
+        cancelHandshakeTimeout(ctx.channel());
+        if (ctx.channel().attr(ACTIVE_TIME_ATTR_KEY).getAndSet(null) != null) {
+            // 未完成握手就断开：超时、非法升级请求或客户端放弃
+            metrics.handshakeFailed();
+        }
+        metrics.connectionClosed();
+        channels.remove(ctx.channel().id());
         handler.doOnClose(ctx.channel());
+        handler.getTopicRegistry().unsubscribeAll(ctx.channel());
+        handler.getSessionIndex().unbindAll(ctx.channel());
+        if (handler.getHeartbeat() != null) {
+            handler.getHeartbeat().unregister(ctx.channel());
+        }
         super.channelInactive(ctx);
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        metrics.error();
         handler.doOnError(ctx.channel(), cause);
     }
 
-    public Map<String, Channel> getChannels() {
+    public Map<ChannelId, Channel> getChannels() {
         return channels;
     }
 
+    public EndpointMetrics getMetrics() {
+        return metrics;
+    }
+
+    public Heartbeat getHeartbeat() {
+        return handler.getHeartbeat();
+    }
+
     /**
-     * Complete the websocket protocol handshake within 30s, otherwise disconnect
+     * HttpServerCodec、HttpObjectAggregator 已由握手过程移除；握手 handler 在 HandshakeComplete 事件之后
+     * 才被替换为 WS403Responder(只响应 HTTP 请求，升级后不会再收到)，因此放到 EventLoop 任务中移除
      */
-    private void startTimeoutTask() {
-        service.scheduleAtFixedRate(() -> {
-            for (Channel channel : UN_COMPLETE_HANDSHAKER_CHANNELS) {
-                long timestamp = channel.attr(ACTIVE_TIME_ATTR_KEY).get();
-                if (System.currentTimeMillis() - timestamp > 30000) {
-                    channel.close();
-                }
+    private static void removeHandshakeHandlers(Channel channel) {
+        final ChannelPipeline pipeline = channel.pipeline();
+        channel.eventLoop().execute(() -> {
+            if (pipeline.context(WS_403_RESPONDER) != null) {
+                pipeline.remove(WS_403_RESPONDER);
             }
-        }, 0, 10000, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    public static void cancelHandshakeTimeout(Channel channel) {
+        Timeout timeout = channel.attr(HANDSHAKE_TIMEOUT_ATTR_KEY).getAndSet(null);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Complete the websocket protocol handshake within handshakeTimeout, otherwise disconnect
+     */
+    private static final class HandshakeTimeoutTask implements TimerTask {
+        private final Channel channel;
+        private final long handshakeTimeout;
+
+        HandshakeTimeoutTask(Channel channel, long handshakeTimeout) {
+            this.channel = channel;
+            this.handshakeTimeout = handshakeTimeout;
+        }
+
+        @Override
+        public void run(Timeout timeout) {
+            if (channel.attr(HANDSHAKE_TIMEOUT_ATTR_KEY).compareAndSet(timeout, null)) {
+                logger.warn("Close channel " + channel.id() + ", cause: handshake not completed within " + handshakeTimeout + "ms");
+                channel.close();
+            }
+        }
     }
 }
@@ -0,0 +1,189 @@
+package com.melot.websocket.metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 单个 endpoint 的指标，计数器全部是 {@link LongAdder}，IO 线程记录时不加锁。
+ * <p>
+ * {@link #counters()}、{@link #gauges()}、{@link #timers()} 按名字暴露全部指标，供 {@link MetricsExporter} 统一导出
+ */
+public class EndpointMetrics {
+    public static final String HANDSHAKE = "handshake";
+    public static final String HEARTBEAT_RTT = "heartbeat.rtt";
+    public static final String CALLBACK_PREFIX = "callback.";
+
+    private static final String[] CALLBACKS = {"onOpen", "onMessage", "onBinary", "onEvent", "onClose", "onError"};
+
+    private final String host;
+    private final int port;
+    private final String path;
+
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    private final LongAdder connectionsRejected = new LongAdder();
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder handshakeFailures = new LongAdder();
+    private final LongAdder framesIn = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder framesOut = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+    private final LongAdder messagesDropped = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder heartbeatTimeouts = new LongAdder();
+    private final LongAdder framesRateLimited = new LongAdder();
+    private final LongAdder connectionsRateLimited = new LongAdder();
+
+    private final LatencyHistogram handshakeLatency = new LatencyHistogram();
+    private final LatencyHistogram heartbeatRtt = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> callbackLatency = new LinkedHashMap<>();
+
+    private final Map<String, LongSupplier> counters = new LinkedHashMap<>();
+    private final Map<String, LongSupplier> gauges = new LinkedHashMap<>();
+    private final Map<String, LatencyHistogram> timers = new LinkedHashMap<>();
+
+    public EndpointMetrics(String host, int port, String path) {
+        this.host = host;
+        this.port = port;
+        this.path = path;
+        counters.put("connections.opened", connectionsOpened::sum);
+        counters.put("connections.closed", connectionsClosed::sum);
+        counters.put("connections.rejected", connectionsRejected::sum);
+        counters.put("handshakes", handshakes::sum);
+        counters.put("handshake.failures", handshakeFailures::sum);
+        counters.put("frames.in", framesIn::sum);
+        counters.put("bytes.in", bytesIn::sum);
+        counters.put("frames.out", framesOut::sum);
+        counters.put("bytes.out", bytesOut::sum);
+        counters.put("write.failures", writeFailures::sum);
+        counters.put("messages.dropped", messagesDropped::sum);
+        counters.put("errors", errors::sum);
+        counters.put("heartbeat.timeouts", heartbeatTimeouts::sum);
+        counters.put("ratelimit.frames", framesRateLimited::sum);
+        counters.put("ratelimit.connections", connectionsRateLimited::sum);
+        gauges.put("connections.active", this::activeConnections);
+        timers.put(HANDSHAKE, handshakeLatency);
+        timers.put(HEARTBEAT_RTT, heartbeatRtt);
+        for (String callback : CALLBACKS) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            callbackLatency.put(callback, histogram);
+            timers.put(CALLBACK_PREFIX + callback, histogram);
+        }
+    }
+
+    public void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    public void connectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    public void connectionRejected() {
+        connectionsRejected.increment();
+    }
+
+    public void handshakeCompleted(long nanos) {
+        handshakes.increment();
+        handshakeLatency.record(nanos);
+    }
+
+    public void handshakeFailed() {
+        handshakeFailures.increment();
+    }
+
+    public void frameIn(int bytes) {
+        framesIn.increment();
+        bytesIn.add(bytes);
+    }
+
+    public void frameOut(long bytes) {
+        framesOut.increment();
+        bytesOut.add(bytes);
+    }
+
+    public void writeFailed() {
+        writeFailures.increment();
+    }
+
+    public void messageDropped() {
+        messagesDropped.increment();
+    }
+
+    public void error() {
+        errors.increment();
+    }
+
+    public void heartbeatRtt(long nanos) {
+        heartbeatRtt.record(nanos);
+    }
+
+    public void heartbeatTimeout() {
+        heartbeatTimeouts.increment();
+    }
+
+    /**
+     * 超出 session 限流的帧(PAUSE_READ 策略下为触发暂停读取的帧)
+     */
+    public void frameRateLimited() {
+        framesRateLimited.increment();
+    }
+
+    /**
+     * 超出来源 IP 建连速率被拒绝的连接
+     */
+    public void connectionRateLimited() {
+        connectionsRateLimited.increment();
+    }
+
+    /**
+     * 记录 @On* 回调耗时
+     *
+     * @param callback onOpen、onMessage、onBinary、onEvent、onClose、onError
+     */
+    public void callback(String callback, long nanos) {
+        LatencyHistogram histogram = callbackLatency.get(callback);
+        if (histogram != null) {
+            histogram.record(nanos);
+        }
+    }
+
+    public long activeConnections() {
+        return connectionsOpened.sum() - connectionsClosed.sum();
+    }
+
+    /**
+     * 注册一个瞬时值指标，需在导出之前调用
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Map<String, LongSupplier> counters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    public Map<String, LongSupplier> gauges() {
+        return Collections.unmodifiableMap(gauges);
+    }
+
+    public Map<String, LatencyHistogram> timers() {
+        return Collections.unmodifiableMap(timers);
+    }
+}
@@ -0,0 +1,142 @@
+package com.melot.websocket.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 每个 endpoint 注册一个 MBean：com.melot.websocket:type=Endpoint,port=8192,path="/ws"
+ * <p>
+ * 计数器和瞬时值直接作为属性；耗时指标展开为 name.count、name.meanMicros、name.p99Micros、name.maxMicros
+ */
+public class JmxMetricsExporter implements MetricsExporter {
+    private static final Logger logger = LoggerFactory.getLogger(JmxMetricsExporter.class);
+
+    public static final String DOMAIN = "com.melot.websocket";
+
+    private final MBeanServer server;
+    private final Map<EndpointMetrics, ObjectName> registered = new ConcurrentHashMap<>();
+
+    public JmxMetricsExporter() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxMetricsExporter(MBeanServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public void bind(EndpointMetrics metrics) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=Endpoint,port=" + metrics.getPort() + ",path=" + ObjectName.quote(metrics.getPath()));
+            server.registerMBean(new EndpointMBean(metrics), name);
+            registered.put(metrics, name);
+        } catch (JMException e) {
+            logger.warn("JmxMetricsExporter register " + metrics.getPort() + metrics.getPath() + " error: ", e);
+        }
+    }
+
+    @Override
+    public void unbind(EndpointMetrics metrics) {
+        ObjectName name = registered.remove(metrics);
+        if (name != null) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                logger.warn("JmxMetricsExporter unregister " + name + " error: ", e);
+            }
+        }
+    }
+
+    /**
+     * 注销全部 MBean，作为 Spring bean 时在容器关闭时自动调用
+     */
+    public void close() {
+        for (EndpointMetrics metrics : new ArrayList<>(registered.keySet())) {
+            unbind(metrics);
+        }
+    }
+
+    private static final class EndpointMBean implements DynamicMBean {
+        private final Map<String, LongSupplier> longs = new LinkedHashMap<>();
+        private final Map<String, LatencyHistogram> means = new LinkedHashMap<>();
+        private final MBeanInfo info;
+
+        EndpointMBean(EndpointMetrics metrics) {
+            longs.putAll(metrics.counters());
+            longs.putAll(metrics.gauges());
+            for (Map.Entry<String, LatencyHistogram> entry : metrics.timers().entrySet()) {
+                final LatencyHistogram histogram = entry.getValue();
+                String name = entry.getKey();
+                longs.put(name + ".count", histogram::count);
+                longs.put(name + ".p99Micros", () -> TimeUnit.NANOSECONDS.toMicros(histogram.percentile(0.99)));
+                longs.put(name + ".maxMicros", () -> TimeUnit.NANOSECONDS.toMicros(histogram.maxNanos()));
+                means.put(name + ".meanMicros", histogram);
+            }
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : longs.keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+            }
+            for (String name : means.keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "double", name, true, false, false));
+            }
+            info = new MBeanInfo(EndpointMBean.class.getName(), "websocket endpoint " + metrics.getPort() + metrics.getPath(),
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongSupplier supplier = longs.get(attribute);
+            if (supplier != null) {
+                return supplier.getAsLong();
+            }
+            LatencyHistogram histogram = means.get(attribute);
+            if (histogram != null) {
+                return histogram.meanNanos() / 1000;
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("read only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException ignored) {
+                    // 按 DynamicMBean 约定跳过不存在的属性
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            return info;
+        }
+    }
+}
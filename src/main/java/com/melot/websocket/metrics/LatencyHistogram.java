@@ -0,0 +1,81 @@
+package com.melot.websocket.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定桶的无锁耗时直方图。
+ * <p>
+ * 第 i 个桶记录 [2^(i-1), 2^i) 微秒的样本，共覆盖 1us ~ 33s，更大的值落入最后一个桶；
+ * 每个桶是一个 {@link LongAdder}，多线程记录不争用同一个缓存行。分位数只精确到桶的上界。
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 27;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int index = 64 - Long.numberOfLeadingZeros(micros);
+        buckets[index < BUCKETS ? index : BUCKETS - 1].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    public double meanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) totalNanos.sum() / n;
+    }
+
+    /**
+     * 近似分位数，返回样本所在桶的上界（纳秒），落在最后一个桶时返回最大值
+     *
+     * @param quantile 0 ~ 1
+     */
+    public long percentile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets[i].sum();
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(TimeUnit.MICROSECONDS.toNanos(1L << i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+}
@@ -0,0 +1,14 @@
+package com.melot.websocket.metrics;
+
+/**
+ * 指标导出 SPI。
+ * <p>
+ * Spring 容器中所有 MetricsExporter 类型的 bean 会在 endpoint 注册时收到 {@link #bind}；
+ * 内置 {@link JmxMetricsExporter}，classpath 中存在 Micrometer 时另有 {@link MicrometerMetricsExporter}
+ */
+public interface MetricsExporter {
+
+    void bind(EndpointMetrics metrics);
+
+    void unbind(EndpointMetrics metrics);
+}
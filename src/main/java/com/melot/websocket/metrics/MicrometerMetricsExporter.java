@@ -0,0 +1,60 @@
+package com.melot.websocket.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 导出到 Micrometer，指标名前缀 websocket.，标签 port、path。
+ * <p>
+ * 计数器注册为 FunctionCounter，耗时注册为 FunctionTimer 以及 .p99 分位数 Gauge，
+ * 都在抓取时读取 {@link EndpointMetrics}，记录路径上没有额外开销
+ */
+public class MicrometerMetricsExporter implements MetricsExporter {
+    private static final String PREFIX = "websocket.";
+
+    private final MeterRegistry registry;
+
+    public MicrometerMetricsExporter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void bind(EndpointMetrics metrics) {
+        Tags tags = Tags.of("port", String.valueOf(metrics.getPort()), "path", metrics.getPath());
+        for (Map.Entry<String, LongSupplier> entry : metrics.counters().entrySet()) {
+            FunctionCounter.builder(PREFIX + entry.getKey(), entry.getValue(), LongSupplier::getAsLong)
+                    .tags(tags)
+                    .register(registry);
+        }
+        for (Map.Entry<String, LongSupplier> entry : metrics.gauges().entrySet()) {
+            Gauge.builder(PREFIX + entry.getKey(), entry.getValue(), LongSupplier::getAsLong)
+                    .tags(tags)
+                    .register(registry);
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : metrics.timers().entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            FunctionTimer.builder(PREFIX + entry.getKey(), histogram, LatencyHistogram::count,
+                    LatencyHistogram::totalNanos, TimeUnit.NANOSECONDS)
+                    .tags(tags)
+                    .register(registry);
+            Gauge.builder(PREFIX + entry.getKey() + ".p99", histogram, h -> h.percentile(0.99) / 1e9)
+                    .tags(tags)
+                    .baseUnit("seconds")
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Micrometer 1.0 不支持移除 meter，这些 meter 只持有指标的弱引用，endpoint 关闭后随之失效
+     */
+    @Override
+    public void unbind(EndpointMetrics metrics) {
+    }
+}
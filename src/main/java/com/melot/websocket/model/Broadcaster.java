@@ -0,0 +1,133 @@
+package com.melot.websocket.model;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.ChannelMatcher;
+import io.netty.channel.group.ChannelMatchers;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 单个 @ServerEndpoint 的广播器，持有所有已完成握手的连接。
+ * <p>
+ * payload 只编码一次为 {@link PreparedFrame}，按 {@link EventLoop} 分组后每个 EventLoop 只提交一个任务，
+ * 在任务里依次 write 所有连接，最后统一 flush。
+ */
+public class Broadcaster {
+    private final ChannelGroup channels;
+    private final ByteBufAllocator alloc;
+
+    public Broadcaster(String name) {
+        this(name, PooledByteBufAllocator.DEFAULT);
+    }
+
+    public Broadcaster(String name, ByteBufAllocator alloc) {
+        this.channels = new DefaultChannelGroup(name, GlobalEventExecutor.INSTANCE);
+        this.alloc = alloc;
+    }
+
+    /**
+     * 握手完成后加入，连接关闭时 {@link ChannelGroup} 自动移除
+     */
+    public void add(Channel channel) {
+        channels.add(channel);
+    }
+
+    public ChannelGroup channels() {
+        return channels;
+    }
+
+    public int size() {
+        return channels.size();
+    }
+
+    public void broadcastText(CharSequence text) {
+        broadcast(PreparedFrame.text(alloc, text), ChannelMatchers.all());
+    }
+
+    public void broadcastBinary(byte[] bytes) {
+        broadcast(PreparedFrame.binary(alloc, bytes), ChannelMatchers.all());
+    }
+
+    /**
+     * payload 的所有权转移给广播器
+     */
+    public void broadcastBinary(ByteBuf payload) {
+        broadcast(PreparedFrame.binary(alloc, payload), ChannelMatchers.all());
+    }
+
+    public void broadcast(PreparedFrame frame) {
+        broadcast(frame, ChannelMatchers.all());
+    }
+
+    /**
+     * 广播给匹配的连接，frame 的引用由本方法释放；需要复用时先 {@link PreparedFrame#retain()}
+     */
+    public void broadcast(PreparedFrame frame, ChannelMatcher matcher) {
+        try {
+            Map<EventLoop, List<Channel>> loops = new IdentityHashMap<>();
+            for (Channel channel : channels) {
+                if (matcher.matches(channel)) {
+                    List<Channel> list = loops.get(channel.eventLoop());
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        loops.put(channel.eventLoop(), list);
+                    }
+                    list.add(channel);
+                }
+            }
+            for (Map.Entry<EventLoop, List<Channel>> entry : loops.entrySet()) {
+                write(entry.getKey(), entry.getValue(), frame);
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * 把 frame 写给同一个 EventLoop 上的一批连接，frame 的引用由调用方负责
+     */
+    public static void write(EventLoop loop, final Collection<Channel> channels, final PreparedFrame frame) {
+        frame.retain();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // 写失败会同步触发 exceptionCaught，回调里可能修改 channels，先取快照
+                    Channel[] targets = channels.toArray(new Channel[0]);
+                    for (Channel channel : targets) {
+                        if (channel.isActive()) {
+                            channel.write(frame.messageFor(channel), channel.voidPromise());
+                        }
+                    }
+                    for (Channel channel : targets) {
+                        channel.flush();
+                    }
+                } finally {
+                    frame.release();
+                }
+            }
+        };
+        if (loop.inEventLoop()) {
+            task.run();
+        } else {
+            try {
+                loop.execute(task);
+            } catch (RejectedExecutionException e) {
+                // EventLoop 已关闭
+                frame.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.melot.websocket.model;
+
+/**
+ * 带合并 key 的下行消息，{@link OutboundPolicy#CONFLATE} 策略下同 key 的待发送消息只保留最新一条
+ */
+public final class ConflatedMessage {
+    private final Object key;
+    private final Object message;
+
+    public ConflatedMessage(Object key, Object message) {
+        this.key = key;
+        this.message = message;
+    }
+
+    public Object key() {
+        return key;
+    }
+
+    public Object message() {
+        return message;
+    }
+}
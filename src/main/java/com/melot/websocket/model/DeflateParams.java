@@ -0,0 +1,50 @@
+package com.melot.websocket.model;
+
+import io.netty.util.AttributeKey;
+
+/**
+ * 连接协商成功的 permessage-deflate 参数，握手时记录在 channel 上
+ */
+public final class DeflateParams {
+    public static final AttributeKey<DeflateParams> KEY = AttributeKey.valueOf("WEBSOCKET_DEFLATE_PARAMS");
+
+    /**
+     * java.util.zip.Deflater 固定使用 15 位窗口
+     */
+    private static final int JDK_WINDOW_BITS = 15;
+
+    private final int compressionLevel;
+    private final int serverWindowBits;
+    private final boolean serverNoContextTakeover;
+    private final int threshold;
+
+    public DeflateParams(int compressionLevel, int serverWindowBits, boolean serverNoContextTakeover, int threshold) {
+        this.compressionLevel = compressionLevel;
+        this.serverWindowBits = serverWindowBits;
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.threshold = threshold;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public int getServerWindowBits() {
+        return serverWindowBits;
+    }
+
+    public boolean isServerNoContextTakeover() {
+        return serverNoContextTakeover;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * 服务端不保留压缩上下文且窗口为 15 位时，每条消息独立压缩，同一份压缩结果可以发给所有这样的连接
+     */
+    public boolean isShareable() {
+        return serverNoContextTakeover && serverWindowBits == JDK_WINDOW_BITS;
+    }
+}
@@ -0,0 +1,64 @@
+package com.melot.websocket.model;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
+
+/**
+ * 帧头 + {@link FileRegion} 组成的 binary 帧，payload 经 sendfile 直接从文件写到 socket。
+ * <p>
+ * 在 pipeline 中作为一条消息经过慢消费者保护等 handler，到 {@link com.melot.websocket.handler.FileFrameEncoder}
+ * 才拆成帧头和 FileRegion 两次写；释放时一起释放两者
+ */
+public final class FileFrame extends AbstractReferenceCounted {
+    private final ByteBuf header;
+    private final FileRegion region;
+
+    /**
+     * region 的所有权转移给返回值
+     */
+    public static FileFrame binary(ByteBufAllocator alloc, FileRegion region) {
+        long length = region.count();
+        ByteBuf header = alloc.directBuffer(PreparedFrame.headerLength(length));
+        PreparedFrame.writeHeader(header, PreparedFrame.FIN | PreparedFrame.OPCODE_BINARY, length);
+        return new FileFrame(header, region);
+    }
+
+    private FileFrame(ByteBuf header, FileRegion region) {
+        this.header = header;
+        this.region = region;
+    }
+
+    public ByteBuf header() {
+        return header;
+    }
+
+    public FileRegion region() {
+        return region;
+    }
+
+    /**
+     * 帧头和 payload 的总字节数
+     */
+    public long length() {
+        return header.readableBytes() + region.count();
+    }
+
+    @Override
+    protected void deallocate() {
+        header.release();
+        region.release();
+    }
+
+    @Override
+    public FileFrame retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public FileFrame touch(Object hint) {
+        return this;
+    }
+}
@@ -0,0 +1,20 @@
+package com.melot.websocket.model;
+
+/**
+ * @ServerEndpoint 实例的创建方式，注册 endpoint 时确定
+ */
+public enum InstanceStrategy {
+    /**
+     * 每个连接获取一次 bean(bean 名在注册时解析，不再按类型查找)，prototype 作用域的 bean 每个连接一个实例；
+     * 普通的 prototype bean 在注册时缓存构造器，每个连接直接构造后注入依赖、执行初始化回调，不经过 getBean
+     */
+    PROTOTYPE,
+    /**
+     * 注册时获取一次，所有连接共用同一个实例，endpoint 需自行保证线程安全
+     */
+    SINGLETON,
+    /**
+     * 连接关闭且 onClose 执行完后实例放回池中复用，池满时丢弃；复用的实例需在 onOpen 中重置自身状态
+     */
+    POOL
+}
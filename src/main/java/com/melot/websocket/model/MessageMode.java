@@ -0,0 +1,20 @@
+package com.melot.websocket.model;
+
+/**
+ * 分片消息(首帧 + continuation 帧)交给 @OnMessage/@OnBinary 的方式
+ */
+public enum MessageMode {
+    /**
+     * 每收到一帧回调一次，continuation 帧按消息的类型回调，text 分片在 UTF-8 字符边界切分；可用 boolean 参数判断是否最后一帧
+     */
+    FRAME,
+    /**
+     * 同 FRAME，另外在业务线程池模式下堆积超过 sessionQueueSize 时只暂停读取，不按 overflowPolicy 丢弃，
+     * 由 TCP 窗口向客户端施加背压
+     */
+    STREAM,
+    /**
+     * 聚合成完整消息后回调一次，超过 maxMessageSize 时以 1009 关闭连接；@ServerEndpoint 的默认方式
+     */
+    AGGREGATE
+}
@@ -1,24 +1,43 @@
 package com.melot.websocket.model;
 
 import com.melot.websocket.annotation.*;
+import com.melot.websocket.codec.IntHeaderDiscriminator;
+import com.melot.websocket.codec.JsonFieldDiscriminator;
+import com.melot.websocket.codec.MessageCodec;
+import com.melot.websocket.codec.MessageCodecs;
+import com.melot.websocket.codec.MessageDiscriminator;
 import com.melot.websocket.support.*;
 import io.netty.channel.Channel;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler.HandshakeComplete;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.AbstractBeanFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.DefaultParameterNameDiscoverer;
 import org.springframework.core.MethodParameter;
 import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
 
 public class MethodMapping {
+    private static final Logger logger = LoggerFactory.getLogger(MethodMapping.class);
+
     private static final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+    /**
+     * -Dnetty.websocket.reflective.invoker=true 时强制使用反射调用
+     */
+    private static final boolean REFLECTIVE_INVOKER = Boolean.getBoolean("netty.websocket.reflective.invoker");
 
     private final Method onOpen;
     private final Method onClose;
@@ -41,14 +60,43 @@ public class MethodMapping {
     private final MethodArgumentResolver[] onCloseArgResolvers;
     private final MethodArgumentResolver[] onErrorArgResolvers;
 
+    private final MethodInvoker onOpenInvoker;
+    private final MethodInvoker onMessageInvoker;
+    private final MethodInvoker onBinaryInvoker;
+    private final MethodInvoker onEventInvoker;
+    private final MethodInvoker onCloseInvoker;
+    private final MethodInvoker onErrorInvoker;
+
     private final Class clazz;
     private final ApplicationContext applicationContext;
     private final AbstractBeanFactory beanFactory;
+    /**
+     * 注册时解析的 bean 名，每个连接按名字获取 bean，不再按类型查找
+     */
+    private final String beanName;
+    /**
+     * prototype bean 的无参构造器，注册时缓存；不为 null 时每个连接直接构造并注入依赖，不经过 getBean
+     */
+    private final Constructor<?> prototypeConstructor;
+    /**
+     * 容器中的 {@link MessageCodec} bean，按 @Order 排序
+     */
+    private final MessageCodecs codecs;
 
     public MethodMapping(Class<?> clazz, ApplicationContext context, AbstractBeanFactory beanFactory) throws Exception {
         this.applicationContext = context;
         this.clazz = clazz;
         this.beanFactory = beanFactory;
+        String[] beanNames = context == null ? new String[0] : context.getBeanNamesForType(clazz);
+        this.beanName = beanNames.length == 1 ? beanNames[0] : null;
+        this.prototypeConstructor = getPrototypeConstructor(clazz, beanName, beanFactory);
+        if (context != null) {
+            List<MessageCodec> codecBeans = new ArrayList<>(context.getBeansOfType(MessageCodec.class).values());
+            AnnotationAwareOrderComparator.sort(codecBeans);
+            this.codecs = new MessageCodecs(codecBeans);
+        } else {
+            this.codecs = MessageCodecs.EMPTY;
+        }
 
         Method open = null;
         Method message = null;
@@ -56,6 +104,9 @@ public class MethodMapping {
         Method event = null;
         Method close = null;
         Method error = null;
+        // 声明了 type 的方法，按类型路由
+        List<Method> typedMessages = new ArrayList<>();
+        List<Method> typedBinaries = new ArrayList<>();
 
         Method[] clazzMethods = null;
         Class<?> currentClazz = clazz;
@@ -73,13 +124,15 @@ public class MethodMapping {
                     }
                 } else if (method.getAnnotation(OnMessage.class) != null) {
                     checkPublic(method);
-                    if (message == null) message = method;
+                    if (method.getAnnotation(OnMessage.class).type().length > 0) addTyped(typedMessages, method);
+                    else if (message == null) message = method;
                     else if (currentClazz == clazz || !isMethodOverride(message, method)) {
                         throw new Exception("MethodMapping.duplicateAnnotation OnMessage");
                     }
                 } else if (method.getAnnotation(OnBinary.class) != null) {
                     checkPublic(method);
-                    if (binary == null) binary = method;
+                    if (method.getAnnotation(OnBinary.class).type().length > 0) addTyped(typedBinaries, method);
+                    else if (binary == null) binary = method;
                     else if (currentClazz == clazz || !isMethodOverride(binary, method)) {
                         throw new Exception("MethodMapping.duplicateAnnotation OnBinary");
                     }
@@ -123,6 +176,8 @@ public class MethodMapping {
                 binary = null;
             }
         }
+        removeOverrideWithoutAnnotation(clazz, clazzMethods, typedMessages, OnMessage.class);
+        removeOverrideWithoutAnnotation(clazz, clazzMethods, typedBinaries, OnBinary.class);
         if (event != null && event.getDeclaringClass() != clazz) {
             if (isOverrideWithoutAnnotation(clazzMethods, event, OnEvent.class)) {
                 event = null;
@@ -159,6 +214,18 @@ public class MethodMapping {
         onEventArgResolvers = getResolvers(onEventParameters);
         onCloseArgResolvers = getResolvers(onCloseParameters);
         onErrorArgResolvers = getResolvers(onErrorParameters);
+
+        onOpenInvoker = getInvoker(onOpen, onOpenParameters, onOpenArgResolvers);
+        Discriminator discriminator = clazz.getAnnotation(Discriminator.class);
+        onMessageInvoker = getRoutingInvoker(typedMessages, OnMessage.class,
+                getInvoker(onMessage, onMessageParameters, onMessageArgResolvers),
+                discriminator == null ? null : discriminator.text(), discriminator);
+        onBinaryInvoker = getRoutingInvoker(typedBinaries, OnBinary.class,
+                getInvoker(onBinary, onBinaryParameters, onBinaryArgResolvers),
+                discriminator == null ? null : discriminator.binary(), discriminator);
+        onEventInvoker = getInvoker(onEvent, onEventParameters, onEventArgResolvers);
+        onCloseInvoker = getInvoker(onClose, onCloseParameters, onCloseArgResolvers);
+        onErrorInvoker = getInvoker(onError, onErrorParameters, onErrorArgResolvers);
     }
 
     private void checkPublic(Method method) throws Exception {
@@ -173,6 +240,61 @@ public class MethodMapping {
                 && Arrays.equals(method1.getParameterTypes(), method2.getParameterTypes()));
     }
 
+    /**
+     * 子类已声明的同签名方法优先，父类方法忽略
+     */
+    private void addTyped(List<Method> typed, Method method) {
+        for (Method exist : typed) {
+            if (isMethodOverride(exist, method)) {
+                return;
+            }
+        }
+        typed.add(method);
+    }
+
+    private void removeOverrideWithoutAnnotation(Class<?> clazz, Method[] clazzMethods, List<Method> typed, Class<? extends Annotation> annotation) {
+        typed.removeIf(method -> method.getDeclaringClass() != clazz && isOverrideWithoutAnnotation(clazzMethods, method, annotation));
+    }
+
+    /**
+     * 有声明 type 的方法时生成按类型分发的调用器，未声明 type 的方法作为未匹配类型的默认处理
+     */
+    private MethodInvoker getRoutingInvoker(List<Method> typed, Class<? extends Annotation> annotation, MethodInvoker fallback,
+                                            Class<? extends MessageDiscriminator> discriminatorClass, Discriminator discriminator) throws Exception {
+        if (typed.isEmpty()) {
+            return fallback;
+        }
+        Map<Integer, MethodInvoker> routes = new HashMap<>();
+        for (Method method : typed) {
+            MethodParameter[] parameters = getParameters(method);
+            MethodInvoker invoker = getInvoker(method, parameters, getResolvers(parameters));
+            int[] types = annotation == OnMessage.class ? method.getAnnotation(OnMessage.class).type() : method.getAnnotation(OnBinary.class).type();
+            for (int type : types) {
+                if (type == MessageDiscriminator.NONE || routes.put(type, invoker) != null) {
+                    throw new Exception("MethodMapping.duplicateAnnotation " + annotation.getSimpleName() + " type " + type);
+                }
+            }
+        }
+        return new TypeRoutingInvoker(getDiscriminator(annotation, discriminatorClass, discriminator), routes, fallback);
+    }
+
+    private MessageDiscriminator getDiscriminator(Class<? extends Annotation> annotation, Class<? extends MessageDiscriminator> discriminatorClass,
+                                                  Discriminator discriminator) throws Exception {
+        if (discriminatorClass == null) {
+            return annotation == OnMessage.class ? new JsonFieldDiscriminator("type") : new IntHeaderDiscriminator(0);
+        }
+        if (discriminatorClass == JsonFieldDiscriminator.class) {
+            return new JsonFieldDiscriminator(discriminator.field());
+        }
+        if (discriminatorClass == IntHeaderDiscriminator.class) {
+            return new IntHeaderDiscriminator(discriminator.offset());
+        }
+        if (applicationContext != null && applicationContext.getBeanNamesForType(discriminatorClass).length > 0) {
+            return applicationContext.getBean(discriminatorClass);
+        }
+        return discriminatorClass.getDeclaredConstructor().newInstance();
+    }
+
     private boolean isOverrideWithoutAnnotation(Method[] methods, Method superclazzMethod, Class<? extends Annotation> annotation) {
         for (Method method : methods) {
             if (isMethodOverride(method, superclazzMethod) && (method.getAnnotation(annotation) == null)) {
@@ -197,8 +319,44 @@ public class MethodMapping {
         return result;
     }
 
+    public MessageCodecs getCodecs() {
+        return codecs;
+    }
+
     public Object getEndpointInstance() {
-        return applicationContext.getBean(clazz);
+        if (prototypeConstructor != null) {
+            AutowireCapableBeanFactory factory = applicationContext.getAutowireCapableBeanFactory();
+            Object instance = BeanUtils.instantiateClass(prototypeConstructor);
+            factory.autowireBean(instance);
+            return factory.initializeBean(instance, beanName);
+        }
+        return beanName != null ? applicationContext.getBean(beanName) : applicationContext.getBean(clazz);
+    }
+
+    /**
+     * 只有按类扫描/注册、没有构造器参数、属性值、工厂方法和 lookup 方法的 prototype bean 才走缓存的构造器，
+     * 这些 bean 由 getBean 创建时也只是无参构造 + 注解注入 + 初始化回调，结果一致；其余情况返回 null 仍走 getBean
+     */
+    private static Constructor<?> getPrototypeConstructor(Class<?> clazz, String beanName, AbstractBeanFactory beanFactory) {
+        if (beanName == null || beanFactory == null || !beanFactory.isPrototype(beanName)) {
+            return null;
+        }
+        BeanDefinition definition = beanFactory.getMergedBeanDefinition(beanName);
+        if (!(definition instanceof AbstractBeanDefinition)) {
+            return null;
+        }
+        AbstractBeanDefinition beanDefinition = (AbstractBeanDefinition) definition;
+        if (!beanDefinition.hasBeanClass() || beanDefinition.getBeanClass() != clazz || beanDefinition.getFactoryMethodName() != null
+                || beanDefinition.getInstanceSupplier() != null || beanDefinition.hasConstructorArgumentValues()
+                || !beanDefinition.getPropertyValues().isEmpty() || beanDefinition.hasMethodOverrides()
+                || beanDefinition.getInitMethodName() != null) {
+            return null;
+        }
+        Constructor<?>[] constructors = clazz.getDeclaredConstructors();
+        if (constructors.length != 1 || constructors[0].getParameterCount() != 0) {
+            return null;
+        }
+        return constructors[0];
     }
 
     /**
@@ -208,6 +366,10 @@ public class MethodMapping {
         return onOpen;
     }
 
+    public MethodInvoker getOnOpenInvoker() {
+        return onOpenInvoker;
+    }
+
     public Object[] getOnOpenArgs(Channel channel, HandshakeComplete handshake) throws Exception {
         return getMethodArgumentValues(channel, handshake, onOpenParameters, onOpenArgResolvers);
     }
@@ -223,6 +385,10 @@ public class MethodMapping {
         return onMessage;
     }
 
+    public MethodInvoker getOnMessageInvoker() {
+        return onMessageInvoker;
+    }
+
     public Object[] getOnMessageArgs(Channel channel, TextWebSocketFrame frame) throws Exception {
         return getMethodArgumentValues(channel, frame, onMessageParameters, onMessageArgResolvers);
     }
@@ -234,6 +400,10 @@ public class MethodMapping {
         return onBinary;
     }
 
+    public MethodInvoker getOnBinaryInvoker() {
+        return onBinaryInvoker;
+    }
+
     public Object[] getOnBinaryArgs(Channel channel, BinaryWebSocketFrame frame) throws Exception {
         return getMethodArgumentValues(channel, frame, onBinaryParameters, onBinaryArgResolvers);
     }
@@ -245,6 +415,10 @@ public class MethodMapping {
         return onEvent;
     }
 
+    public MethodInvoker getOnEventInvoker() {
+        return onEventInvoker;
+    }
+
     public Object[] getOnEventArgs(Channel channel, Object evt) throws Exception {
         return getMethodArgumentValues(channel, evt, onEventParameters, onEventArgResolvers);
     }
@@ -256,6 +430,10 @@ public class MethodMapping {
         return onClose;
     }
 
+    public MethodInvoker getOnCloseInvoker() {
+        return onCloseInvoker;
+    }
+
     public Object[] getOnCloseArgs(Channel channel) throws Exception {
         return getMethodArgumentValues(channel, null, onCloseParameters, onCloseArgResolvers);
     }
@@ -267,6 +445,10 @@ public class MethodMapping {
         return onError;
     }
 
+    public MethodInvoker getOnErrorInvoker() {
+        return onErrorInvoker;
+    }
+
     public Object[] getOnErrorArgs(Channel channel, Throwable throwable) throws Exception {
         return getMethodArgumentValues(channel, throwable, onErrorParameters, onErrorArgResolvers);
     }
@@ -282,6 +464,26 @@ public class MethodMapping {
         return objects;
     }
 
+    /**
+     * 注册期为回调方法生成调用器，无法生成时退回反射调用
+     */
+    private static MethodInvoker getInvoker(Method method, MethodParameter[] parameters, MethodArgumentResolver[] resolvers) {
+        if (method == null) {
+            return null;
+        }
+        if (!REFLECTIVE_INVOKER) {
+            try {
+                MethodInvoker invoker = MethodHandleInvoker.create(method, parameters, resolvers);
+                if (invoker != null) {
+                    return invoker;
+                }
+            } catch (Throwable t) {
+                logger.warn("MethodMapping create MethodHandleInvoker for " + method + " failed, fallback to reflection: " + t.getMessage());
+            }
+        }
+        return new ReflectiveMethodInvoker(method, parameters, resolvers);
+    }
+
     private MethodArgumentResolver[] getResolvers(MethodParameter[] parameters) throws Exception {
         MethodArgumentResolver[] methodArgumentResolvers = new MethodArgumentResolver[parameters.length];
         List<MethodArgumentResolver> resolvers = getDefaultResolvers();
@@ -289,7 +491,9 @@ public class MethodMapping {
             MethodParameter parameter = parameters[i];
             for (MethodArgumentResolver resolver : resolvers) {
                 if (resolver.supportsParameter(parameter)) {
-                    methodArgumentResolvers[i] = resolver;
+                    // codec 在注册期按参数类型绑定
+                    methodArgumentResolvers[i] = resolver instanceof CodecMethodArgumentResolver
+                            ? ((CodecMethodArgumentResolver) resolver).forParameter(parameter) : resolver;
                     break;
                 }
             }
@@ -306,10 +510,19 @@ public class MethodMapping {
         resolvers.add(new HttpHeadersMethodArgumentResolver());
         resolvers.add(new URIMethodArgumentResolver());
         resolvers.add(new SubProtocolMethodArgumentResolver());
+        resolvers.add(new PathVariableMethodArgumentResolver(beanFactory));
         resolvers.add(new TextMethodArgumentResolver());
         resolvers.add(new ByteMethodArgumentResolver());
+        resolvers.add(new ByteBufMethodArgumentResolver());
+        resolvers.add(new ByteBufferMethodArgumentResolver());
+        resolvers.add(new InputStreamMethodArgumentResolver());
+        resolvers.add(new CharSequenceMethodArgumentResolver());
         resolvers.add(new EventMethodArgumentResolver(beanFactory));
         resolvers.add(new ThrowableMethodArgumentResolver());
+        resolvers.add(new LastFragmentMethodArgumentResolver());
+        if (!codecs.isEmpty()) {
+            resolvers.add(new CodecMethodArgumentResolver(codecs));
+        }
         return resolvers;
     }
 }
@@ -0,0 +1,27 @@
+package com.melot.websocket.model;
+
+/**
+ * 连接不可写(超过 writeBufferHighWaterMark)时，新发送消息的处理策略
+ */
+public enum OutboundPolicy {
+    /**
+     * 不处理，全部进入 ChannelOutboundBuffer
+     */
+    NONE,
+    /**
+     * 不可写期间丢弃新消息
+     */
+    DROP_NEWEST,
+    /**
+     * 不可写期间消息暂存在有界队列中，队列满时丢弃最旧的消息
+     */
+    DROP_OLDEST,
+    /**
+     * 不可写期间消息暂存，{@link Session#sendConflated} 发送的同 key 消息只保留最新一条
+     */
+    CONFLATE,
+    /**
+     * 持续不可写超过 unwritableTimeout 毫秒后断开连接，unwritableTimeout 必须大于0
+     */
+    DISCONNECT
+}
@@ -0,0 +1,19 @@
+package com.melot.websocket.model;
+
+/**
+ * 业务线程池模式下，单个 session 待处理回调超过 sessionQueueSize 时的处理策略
+ */
+public enum OverflowPolicy {
+    /**
+     * 关闭 autoRead 暂停读取，队列消费到一半以下后恢复，消息不丢
+     */
+    PAUSE_READ,
+    /**
+     * 丢弃新到的消息
+     */
+    DROP,
+    /**
+     * 关闭连接
+     */
+    CLOSE
+}
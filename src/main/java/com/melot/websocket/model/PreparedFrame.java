@@ -0,0 +1,211 @@
+package com.melot.websocket.model;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.AbstractReferenceCounted;
+
+import java.util.zip.Deflater;
+
+/**
+ * 预先编码好的 websocket 帧(帧头 + payload)，服务端下行帧不需要掩码，同一份字节可以发给任意多个连接。
+ * <p>
+ * 每个连接写入的是 {@link ByteBuf#retainedDuplicate()}，payload 只编码一次。
+ * 开启 permessage-deflate 时，不保留压缩上下文的连接共享同一份压缩结果(只压缩一次)，其余连接交给各自的压缩器。
+ * 创建者持有一个引用，交给 {@link Broadcaster#broadcast(PreparedFrame)} 后由其负责释放。
+ */
+public final class PreparedFrame extends AbstractReferenceCounted {
+    public static final int OPCODE_TEXT = 0x1;
+    public static final int OPCODE_BINARY = 0x2;
+
+    static final int FIN = 0x80;
+    private static final int RSV1 = 0x40;
+    /**
+     * deflate SYNC_FLUSH 结尾固定的 4 字节，按 RFC 7692 发送前去掉
+     */
+    private static final int DEFLATE_TAIL_LENGTH = 4;
+
+    private final ByteBufAllocator alloc;
+    private final int opcode;
+    private final ByteBuf content;
+    private final ByteBuf payload;
+    private volatile PreparedFrame deflated;
+
+    private PreparedFrame(ByteBufAllocator alloc, int opcode, ByteBuf content, int headerLength) {
+        this.alloc = alloc;
+        this.opcode = opcode;
+        this.content = content;
+        this.payload = content.slice(headerLength, content.readableBytes() - headerLength);
+    }
+
+    /**
+     * UTF-8 编码文本，帧头和 payload 写入同一块池化内存
+     */
+    public static PreparedFrame text(ByteBufAllocator alloc, CharSequence text) {
+        int length = ByteBufUtil.utf8Bytes(text);
+        ByteBuf buf = alloc.directBuffer(headerLength(length) + length);
+        writeHeader(buf, FIN | OPCODE_TEXT, length);
+        ByteBufUtil.writeUtf8(buf, text);
+        return new PreparedFrame(alloc, OPCODE_TEXT, buf, headerLength(length));
+    }
+
+    public static PreparedFrame binary(ByteBufAllocator alloc, byte[] bytes) {
+        ByteBuf buf = alloc.directBuffer(headerLength(bytes.length) + bytes.length);
+        writeHeader(buf, FIN | OPCODE_BINARY, bytes.length);
+        buf.writeBytes(bytes);
+        return new PreparedFrame(alloc, OPCODE_BINARY, buf, headerLength(bytes.length));
+    }
+
+    /**
+     * 帧头单独分配，与 payload 组合成 {@link CompositeByteBuf}，payload 不拷贝；payload 的所有权转移给返回值
+     */
+    public static PreparedFrame binary(ByteBufAllocator alloc, ByteBuf payload) {
+        return compose(alloc, FIN | OPCODE_BINARY, payload);
+    }
+
+    /**
+     * 同 {@link #binary(ByteBufAllocator, ByteBuf)}，payload 必须是合法的 UTF-8
+     */
+    public static PreparedFrame text(ByteBufAllocator alloc, ByteBuf payload) {
+        return compose(alloc, FIN | OPCODE_TEXT, payload);
+    }
+
+    /**
+     * 把单个完整帧编码为原始字节(不经过 pipeline 中的帧编码器和压缩扩展)，payload 会被拷贝，不改变其引用计数
+     */
+    public static ByteBuf encode(ByteBufAllocator alloc, int opcode, ByteBuf payload) {
+        int length = payload.readableBytes();
+        ByteBuf buf = alloc.directBuffer(headerLength(length) + length);
+        writeHeader(buf, FIN | opcode, length);
+        buf.writeBytes(payload, payload.readerIndex(), length);
+        return buf;
+    }
+
+    private static PreparedFrame compose(ByteBufAllocator alloc, int firstByte, ByteBuf payload) {
+        int length = payload.readableBytes();
+        ByteBuf header = alloc.directBuffer(headerLength(length));
+        writeHeader(header, firstByte, length);
+        CompositeByteBuf composite = alloc.compositeDirectBuffer(2);
+        composite.addComponents(true, header, payload);
+        return new PreparedFrame(alloc, firstByte & 0x0F, composite, headerLength(length));
+    }
+
+    static int headerLength(long length) {
+        if (length <= 125) {
+            return 2;
+        }
+        return length <= 0xFFFF ? 4 : 10;
+    }
+
+    static void writeHeader(ByteBuf buf, int firstByte, long length) {
+        // FIN/RSV + opcode，服务端帧不带 mask
+        buf.writeByte(firstByte);
+        if (length <= 125) {
+            buf.writeByte((int) length);
+        } else if (length <= 0xFFFF) {
+            buf.writeByte(126);
+            buf.writeShort((int) length);
+        } else {
+            buf.writeByte(127);
+            buf.writeLong(length);
+        }
+    }
+
+    /**
+     * 编码后的完整帧字节，不要修改其读写索引，写出时使用 {@link ByteBuf#retainedDuplicate()}
+     */
+    public ByteBuf content() {
+        return content;
+    }
+
+    /**
+     * 按连接协商的压缩参数选择要写出的消息，返回值的引用交给调用方
+     */
+    public Object messageFor(Channel channel) {
+        DeflateParams params = channel.hasAttr(DeflateParams.KEY) ? channel.attr(DeflateParams.KEY).get() : null;
+        if (params == null || payload.readableBytes() < params.getThreshold()) {
+            return content.retainedDuplicate();
+        }
+        if (params.isShareable()) {
+            return deflated(params.getCompressionLevel()).content.retainedDuplicate();
+        }
+        // 保留压缩上下文的连接只能由自己的压缩器处理
+        ByteBuf data = payload.retainedDuplicate();
+        return opcode == OPCODE_TEXT ? new TextWebSocketFrame(data) : new BinaryWebSocketFrame(data);
+    }
+
+    /**
+     * 独立上下文压缩后的帧(RSV1)，只压缩一次，随本帧一起释放
+     */
+    PreparedFrame deflated(int compressionLevel) {
+        PreparedFrame result = deflated;
+        if (result == null) {
+            synchronized (this) {
+                result = deflated;
+                if (result == null) {
+                    result = deflate(compressionLevel);
+                    deflated = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private PreparedFrame deflate(int compressionLevel) {
+        byte[] input = ByteBufUtil.getBytes(payload);
+        Deflater deflater = new Deflater(compressionLevel, true);
+        ByteBuf compressed = alloc.heapBuffer(input.length / 2 + 64);
+        try {
+            deflater.setInput(input);
+            byte[] out = new byte[Math.max(64, Math.min(input.length, 8192))];
+            int n;
+            do {
+                n = deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+                compressed.writeBytes(out, 0, n);
+            } while (n == out.length);
+        } finally {
+            deflater.end();
+        }
+        int length = compressed.readableBytes() - DEFLATE_TAIL_LENGTH;
+        ByteBuf buf = alloc.directBuffer(headerLength(length) + length);
+        writeHeader(buf, FIN | RSV1 | opcode, length);
+        buf.writeBytes(compressed, 0, length);
+        compressed.release();
+        return new PreparedFrame(alloc, opcode, buf, headerLength(length));
+    }
+
+    @Override
+    protected void deallocate() {
+        content.release();
+        if (deflated != null) {
+            deflated.release();
+        }
+    }
+
+    @Override
+    public PreparedFrame retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public PreparedFrame retain(int increment) {
+        super.retain(increment);
+        return this;
+    }
+
+    @Override
+    public PreparedFrame touch() {
+        return this;
+    }
+
+    @Override
+    public PreparedFrame touch(Object hint) {
+        content.touch(hint);
+        return this;
+    }
+}
@@ -0,0 +1,19 @@
+package com.melot.websocket.model;
+
+/**
+ * 单个 session 收到的消息超过 messageRateLimit/byteRateLimit 时的处理策略
+ */
+public enum RateLimitPolicy {
+    /**
+     * 消息照常处理，关闭 autoRead 暂停读取，直到令牌补足后恢复，消息不丢
+     */
+    PAUSE_READ,
+    /**
+     * 丢弃超出的消息
+     */
+    DROP,
+    /**
+     * 发送 1008(Policy Violation) close 帧后关闭连接
+     */
+    CLOSE
+}
@@ -12,8 +12,41 @@ public class ServerEndpointConfig {
     private int iothreads;
     private int accepts;
     private int heartbeat;
+    private int heartbeatMaxMissed;
     private int maxContentLength;
+    private int handshakeTimeout;
     private int readerIdleTime;
     private int writeIdleTime;
     private int allIdleTime;
+    private int flushConsolidations;
+    private boolean compression;
+    private int compressionLevel;
+    private int compressionWindowBits;
+    private boolean compressionContextTakeover;
+    private int compressionThreshold;
+    private int writeBufferLowWaterMark;
+    private int writeBufferHighWaterMark;
+    private OutboundPolicy outboundPolicy;
+    private int outboundQueueSize;
+    private int unwritableTimeout;
+    private int businessThreads;
+    private int sessionQueueSize;
+    private OverflowPolicy overflowPolicy;
+    private String[] indexes;
+    private int backlog;
+    private boolean reusePort;
+    private int acceptors;
+    private int tcpFastOpen;
+    private int sendBufferSize;
+    private int receiveBufferSize;
+    private int messageRateLimit;
+    private int byteRateLimit;
+    private RateLimitPolicy rateLimitPolicy;
+    private int connectionRateLimit;
+    private int connectionRateLimitAddresses;
+    private InstanceStrategy instanceStrategy;
+    private int instancePoolSize;
+    private int maxFramePayloadLength;
+    private MessageMode messageMode;
+    private int maxMessageSize;
 }
@@ -1,20 +1,46 @@
 package com.melot.websocket.model;
 
+import com.melot.websocket.codec.MessageCodec;
+import com.melot.websocket.handler.EndpointServerHandler;
+import com.melot.websocket.handler.FileFrameEncoder;
+import com.melot.websocket.handler.Heartbeat;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
+import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.util.AttributeKey;
 
+import java.io.EOFException;
+import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class Session {
     private final Channel channel;
+    private final EndpointServerHandler endpoint;
 
+    /**
+     * 不属于任何 endpoint 的 session，广播、主题和二级索引相关的方法不生效
+     */
     public Session(Channel channel) {
+        this(channel, null);
+    }
+
+    public Session(Channel channel, EndpointServerHandler endpoint) {
         this.channel = channel;
+        this.endpoint = endpoint;
     }
 
     public ChannelFuture sendText(String message) {
@@ -55,6 +81,302 @@ public class Session {
         return channel.writeAndFlush(frame);
     }
 
+    /**
+     * 把文件从 offset 开始的 length 字节作为一个 binary 帧发送。
+     * 连接未启用压缩(或 length 低于压缩阈值)且没有 TLS 时经 sendfile 从文件直接写到 socket，
+     * 否则读入池化 direct buffer 后按普通帧发送，交给压缩/TLS 处理。
+     * 参数非法或区间超出文件长度时返回失败的 future，不会写出任何内容
+     */
+    public ChannelFuture sendFile(Path path, long offset, long length) {
+        if (offset < 0 || length < 0) {
+            return channel.newFailedFuture(new IllegalArgumentException("offset: " + offset + ", length: " + length + " (expected: >= 0)"));
+        }
+        FileChannel file;
+        try {
+            file = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return channel.newFailedFuture(e);
+        }
+        try {
+            // 帧头里写的是 length，文件不够长时帧会写到一半失败，先检查区间
+            if (length > file.size() - offset) {
+                throw new EOFException(path + " is shorter than " + (offset + length) + " bytes");
+            }
+        } catch (IOException e) {
+            closeQuietly(file);
+            return channel.newFailedFuture(e);
+        }
+        if (zeroCopy(length)) {
+            // DefaultFileRegion 释放时关闭文件
+            DefaultFileRegion region = new DefaultFileRegion(file, offset, length);
+            FileFrame frame;
+            try {
+                FileFrameEncoder.install(channel);
+                frame = FileFrame.binary(channel.alloc(), region);
+            } catch (RuntimeException e) {
+                region.release();
+                return channel.newFailedFuture(e);
+            }
+            return channel.writeAndFlush(frame);
+        }
+        ByteBuf buffer = null;
+        try {
+            buffer = channel.alloc().directBuffer(Math.toIntExact(length));
+            while (buffer.readableBytes() < length) {
+                int read = buffer.writeBytes(file, offset + buffer.readableBytes(), (int) length - buffer.readableBytes());
+                if (read < 0) {
+                    throw new EOFException(path + " is shorter than " + (offset + length) + " bytes");
+                }
+            }
+            ByteBuf payload = buffer;
+            buffer = null;
+            return channel.writeAndFlush(new BinaryWebSocketFrame(payload));
+        } catch (IOException | ArithmeticException e) {
+            return channel.newFailedFuture(e);
+        } finally {
+            if (buffer != null) {
+                buffer.release();
+            }
+            closeQuietly(file);
+        }
+    }
+
+    /**
+     * 发送内存映射文件从 position 到 limit 的内容作为一个 binary 帧，不改变 buffer 的 position，写出完成前不能修改其内容。
+     * payload 不拷贝：帧编码器对较大的 payload 单独写出帧头，payload 原样交给 socket；启用压缩或 TLS 时由 pipeline 照常处理
+     */
+    public ChannelFuture sendMapped(MappedByteBuffer buffer) {
+        return channel.writeAndFlush(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(buffer)));
+    }
+
+    /**
+     * FileRegion 只能由 socket 传输直接写出，压缩和 TLS 都需要拿到 payload 字节
+     */
+    private boolean zeroCopy(long length) {
+        if (!(channel instanceof SocketChannel) || channel.pipeline().get(SslHandler.class) != null) {
+            return false;
+        }
+        DeflateParams params = channel.hasAttr(DeflateParams.KEY) ? channel.attr(DeflateParams.KEY).get() : null;
+        return params == null || length < params.getThreshold();
+    }
+
+    private static void closeQuietly(FileChannel file) {
+        try {
+            file.close();
+        } catch (IOException ignored) {
+            // 只读文件，关闭失败不影响已读出的内容
+        }
+    }
+
+    /**
+     * 按对象类型选定 {@link MessageCodec} 编码到池化 buffer 后发送
+     *
+     * @throws IllegalArgumentException 没有支持该类型的 codec
+     */
+    public ChannelFuture sendObject(Object message) {
+        return channel.writeAndFlush(encode(message));
+    }
+
+    /**
+     * 发送预编码的帧，frame 本身的引用不会被释放，可以继续发给其他 session
+     */
+    public ChannelFuture send(PreparedFrame frame) {
+        return channel.writeAndFlush(frame.messageFor(channel));
+    }
+
+    /**
+     * 发送可合并的文本消息，{@link OutboundPolicy#CONFLATE} 策略下连接不可写时同 key 的消息只保留最新一条
+     */
+    public ChannelFuture sendConflated(Object key, String message) {
+        return sendConflated(key, new TextWebSocketFrame(message));
+    }
+
+    public ChannelFuture sendConflated(Object key, WebSocketFrame frame) {
+        if (endpoint != null && endpoint.getOutboundPolicy() == OutboundPolicy.CONFLATE) {
+            return channel.writeAndFlush(new ConflatedMessage(key, frame));
+        }
+        return channel.writeAndFlush(frame);
+    }
+
+    // write* 只写入 ChannelOutboundBuffer 不 flush，连续发送多条消息后调用一次 flush()，合并为一次系统调用
+
+    public ChannelFuture writeText(String message) {
+        return channel.write(new TextWebSocketFrame(message));
+    }
+
+    public ChannelFuture writeText(ByteBuf byteBuf) {
+        return channel.write(new TextWebSocketFrame(byteBuf));
+    }
+
+    public ChannelFuture writeText(ByteBuffer byteBuffer) {
+        ByteBuf buffer = channel.alloc().buffer(byteBuffer.remaining());
+        buffer.writeBytes(byteBuffer);
+        return channel.write(new TextWebSocketFrame(buffer));
+    }
+
+    public ChannelFuture writeText(TextWebSocketFrame frame) {
+        return channel.write(frame);
+    }
+
+    public ChannelFuture writeBinary(byte[] bytes) {
+        ByteBuf buffer = channel.alloc().buffer(bytes.length);
+        return channel.write(new BinaryWebSocketFrame(buffer.writeBytes(bytes)));
+    }
+
+    public ChannelFuture writeBinary(ByteBuf byteBuf) {
+        return channel.write(new BinaryWebSocketFrame(byteBuf));
+    }
+
+    public ChannelFuture writeBinary(ByteBuffer byteBuffer) {
+        ByteBuf buffer = channel.alloc().buffer(byteBuffer.remaining());
+        buffer.writeBytes(byteBuffer);
+        return channel.write(new BinaryWebSocketFrame(buffer));
+    }
+
+    public ChannelFuture writeBinary(BinaryWebSocketFrame frame) {
+        return channel.write(frame);
+    }
+
+    public ChannelFuture write(PreparedFrame frame) {
+        return channel.write(frame.messageFor(channel));
+    }
+
+    public ChannelFuture writeObject(Object message) {
+        return channel.write(encode(message));
+    }
+
+    private WebSocketFrame encode(Object message) {
+        MessageCodec codec = endpoint == null ? null : endpoint.getCodecs().find(message.getClass());
+        if (codec == null) {
+            throw new IllegalArgumentException("No MessageCodec for " + message.getClass().getName());
+        }
+        ByteBuf buffer = channel.alloc().buffer();
+        try {
+            codec.encode(message, buffer);
+        } catch (Exception e) {
+            buffer.release();
+            throw new IllegalArgumentException("Failed to encode " + message.getClass().getName(), e);
+        }
+        return codec.text() ? new TextWebSocketFrame(buffer) : new BinaryWebSocketFrame(buffer);
+    }
+
+    /**
+     * 当前 @ServerEndpoint 下所有已握手连接的广播器
+     */
+    public Broadcaster broadcaster() {
+        return endpoint == null ? null : endpoint.getBroadcaster();
+    }
+
+
+    /**
+     * 订阅主题，连接关闭时自动退订
+     */
+    public void subscribe(String topic) {
+        if (endpoint != null) {
+            endpoint.getTopicRegistry().subscribe(channel, topic);
+        }
+    }
+
+    public void unsubscribe(String topic) {
+        if (endpoint != null) {
+            endpoint.getTopicRegistry().unsubscribe(channel, topic);
+        }
+    }
+
+    /**
+     * 当前订阅的主题(只读)
+     */
+    public Set<String> topics() {
+        return endpoint == null ? Collections.<String>emptySet() : endpoint.getTopicRegistry().topics(channel);
+    }
+
+    /**
+     * 向主题的所有订阅者(包括自己)发送文本，payload 只编码一次
+     */
+    public void publish(String topic, CharSequence text) {
+        if (endpoint != null) {
+            endpoint.getTopicRegistry().publishText(topic, text);
+        }
+    }
+
+    public void publish(String topic, byte[] bytes) {
+        if (endpoint != null) {
+            endpoint.getTopicRegistry().publishBinary(topic, bytes);
+        }
+    }
+
+    /**
+     * frame 的引用由本方法释放
+     */
+    public void publish(String topic, PreparedFrame frame) {
+        if (endpoint != null) {
+            endpoint.getTopicRegistry().publish(topic, frame);
+        } else {
+            frame.release();
+        }
+    }
+
+    /**
+     * 在二级索引上绑定业务 key(如 userId)，key 不能为 null；同一索引重复绑定会替换旧 key，连接关闭时自动解绑
+     *
+     * @param index 在 @ServerEndpoint(indexes) 中声明的索引名
+     */
+    public void bindKey(String index, Object key) {
+        if (endpoint != null) {
+            endpoint.getSessionIndex().bind(channel, index, key);
+        }
+    }
+
+    public void unbindKey(String index) {
+        if (endpoint != null) {
+            endpoint.getSessionIndex().unbind(channel, index);
+        }
+    }
+
+    public Object getKey(String index) {
+        return endpoint == null ? null : endpoint.getSessionIndex().key(channel, index);
+    }
+
+    /**
+     * 发送给索引上绑定了 key 的所有连接(多端登录时每个连接一份)，payload 只编码一次
+     */
+    public void sendTo(String index, Object key, CharSequence text) {
+        if (endpoint != null) {
+            endpoint.getSessionIndex().sendText(index, key, text);
+        }
+    }
+
+    public void sendTo(String index, Object key, byte[] bytes) {
+        if (endpoint != null) {
+            endpoint.getSessionIndex().sendBinary(index, key, bytes);
+        }
+    }
+
+    /**
+     * frame 的引用由本方法释放
+     */
+    public void sendTo(String index, Object key, PreparedFrame frame) {
+        if (endpoint != null) {
+            endpoint.getSessionIndex().send(index, key, frame);
+        } else {
+            frame.release();
+        }
+    }
+
+    /**
+     * 按 ChannelId 查找同一 endpoint 上已完成握手的 session，O(1)；不存在或已关闭时返回 null
+     */
+    public Session find(ChannelId id) {
+        return endpoint == null ? null : endpoint.getSession(id);
+    }
+
+    /**
+     * 最近一次心跳测得的往返时间，未启用心跳或尚未收到 pong 时返回 -1
+     */
+    public long rtt(TimeUnit unit) {
+        long rtt = Heartbeat.rtt(channel);
+        return rtt < 0 ? -1 : unit.convert(rtt, TimeUnit.NANOSECONDS);
+    }
 
     public <T> void setAttribute(String name, T value) {
         AttributeKey<T> sessionIdKey = AttributeKey.valueOf(name);
@@ -188,6 +510,9 @@ public class Session {
         return channel.read();
     }
 
+    /**
+     * 把之前 write* 写入的消息一次性刷出
+     */
     public Channel flush() {
         return channel.flush();
     }
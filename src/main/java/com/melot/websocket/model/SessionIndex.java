@@ -0,0 +1,178 @@
+package com.melot.websocket.model;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按业务 key(userId、deviceId、租户等)索引 session。
+ * <p>
+ * 索引名在 {@link com.melot.websocket.annotation.ServerEndpoint#indexes()} 中声明，每个索引是 key 到连接集合的并发多值映射，
+ * 一个 key 可以对应多个连接(多端登录)。同一个索引下每个连接只绑定一个 key，重复绑定会替换旧 key，key 不能为 null。
+ * 连接关闭时由 {@link com.melot.websocket.handler.WebsocketServerHandler#channelInactive} 自动解绑。
+ */
+public class SessionIndex {
+    private static final AttributeKey<Map<String, Object>> KEYS_KEY = AttributeKey.valueOf("WEBSOCKET_INDEX_KEYS");
+
+    private final Map<String, ConcurrentMap<Object, Set<Channel>>> indexes;
+    private final ByteBufAllocator alloc;
+
+    public SessionIndex(Collection<String> names) {
+        this(names, PooledByteBufAllocator.DEFAULT);
+    }
+
+    public SessionIndex(Collection<String> names, ByteBufAllocator alloc) {
+        Map<String, ConcurrentMap<Object, Set<Channel>>> map = new HashMap<>();
+        for (String name : names) {
+            map.put(name, new ConcurrentHashMap<>());
+        }
+        this.indexes = Collections.unmodifiableMap(map);
+        this.alloc = alloc;
+    }
+
+    public void bind(Channel channel, String index, Object key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Session index key must not be null, use unbind to remove the binding");
+        }
+        ConcurrentMap<Object, Set<Channel>> keys = index(index);
+        Map<String, Object> channelKeys = channelKeys(channel);
+        // 同一连接上的换绑加锁，避免并发 bind 使连接同时留在两个 key 下
+        synchronized (channelKeys) {
+            Object previous = channelKeys.put(index, key);
+            if (key.equals(previous)) {
+                return;
+            }
+            if (previous != null) {
+                remove(keys, previous, channel);
+            }
+            keys.compute(key, (k, set) -> {
+                if (set == null) {
+                    set = ConcurrentHashMap.newKeySet();
+                }
+                set.add(channel);
+                return set;
+            });
+        }
+        if (!channel.isActive()) {
+            // 与 channelInactive 并发时由这里补做清理
+            unbind(channel, index);
+        }
+    }
+
+    public void unbind(Channel channel, String index) {
+        ConcurrentMap<Object, Set<Channel>> keys = index(index);
+        if (!channel.hasAttr(KEYS_KEY)) {
+            return;
+        }
+        Map<String, Object> channelKeys = channel.attr(KEYS_KEY).get();
+        synchronized (channelKeys) {
+            Object key = channelKeys.remove(index);
+            if (key != null) {
+                remove(keys, key, channel);
+            }
+        }
+    }
+
+    /**
+     * 连接关闭时调用，解除所有索引上的绑定
+     */
+    public void unbindAll(Channel channel) {
+        if (!channel.hasAttr(KEYS_KEY)) {
+            return;
+        }
+        Map<String, Object> keys = channel.attr(KEYS_KEY).get();
+        synchronized (keys) {
+            for (String index : keys.keySet()) {
+                Object key = keys.remove(index);
+                if (key != null) {
+                    remove(indexes.get(index), key, channel);
+                }
+            }
+        }
+    }
+
+    /**
+     * 连接在索引上绑定的 key，未绑定时返回 null
+     */
+    public Object key(Channel channel, String index) {
+        index(index);
+        return channel.hasAttr(KEYS_KEY) ? channel.attr(KEYS_KEY).get().get(index) : null;
+    }
+
+    /**
+     * key 对应的连接(只读)
+     */
+    public Set<Channel> channels(String index, Object key) {
+        Set<Channel> channels = index(index).get(key);
+        return channels == null ? Collections.<Channel>emptySet() : Collections.unmodifiableSet(channels);
+    }
+
+    public void sendText(String index, Object key, CharSequence text) {
+        if (index(index).containsKey(key)) {
+            send(index, key, PreparedFrame.text(alloc, text));
+        }
+    }
+
+    public void sendBinary(String index, Object key, byte[] bytes) {
+        if (index(index).containsKey(key)) {
+            send(index, key, PreparedFrame.binary(alloc, bytes));
+        }
+    }
+
+    /**
+     * 发给 key 对应的所有连接，payload 只编码一次；frame 的引用由本方法释放
+     */
+    public void send(String index, Object key, PreparedFrame frame) {
+        try {
+            Set<Channel> channels = index(index).get(key);
+            if (channels == null) {
+                return;
+            }
+            for (Channel channel : channels) {
+                Broadcaster.write(channel.eventLoop(), Collections.singletonList(channel), frame);
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    public Set<String> names() {
+        return indexes.keySet();
+    }
+
+    private ConcurrentMap<Object, Set<Channel>> index(String index) {
+        ConcurrentMap<Object, Set<Channel>> keys = indexes.get(index);
+        if (keys == null) {
+            throw new IllegalArgumentException("Session index '" + index + "' is not declared in @ServerEndpoint(indexes)");
+        }
+        return keys;
+    }
+
+    private static void remove(ConcurrentMap<Object, Set<Channel>> keys, Object key, Channel channel) {
+        keys.computeIfPresent(key, (k, set) -> {
+            set.remove(channel);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static Map<String, Object> channelKeys(Channel channel) {
+        Map<String, Object> keys = channel.attr(KEYS_KEY).get();
+        if (keys == null) {
+            Map<String, Object> newKeys = new ConcurrentHashMap<>();
+            keys = channel.attr(KEYS_KEY).setIfAbsent(newKeys);
+            if (keys == null) {
+                keys = newKeys;
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,197 @@
+package com.melot.websocket.model;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.AttributeKey;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 房间/主题订阅表。
+ * <p>
+ * 每个主题的订阅者按连接所属的 {@link EventLoop} 分片，分片集合只在自己的 EventLoop 线程里读写，无需加锁；
+ * publish 时 payload 只编码一次，每个分片提交一个写任务。
+ * 连接关闭时由 {@link com.melot.websocket.handler.WebsocketServerHandler#channelInactive} 自动退订。
+ */
+public class TopicRegistry {
+    private static final AttributeKey<Set<String>> TOPICS_KEY = AttributeKey.valueOf("WEBSOCKET_TOPICS");
+
+    private final ConcurrentMap<String, Topic> topics = new ConcurrentHashMap<>();
+    private final ByteBufAllocator alloc;
+
+    public TopicRegistry() {
+        this(PooledByteBufAllocator.DEFAULT);
+    }
+
+    public TopicRegistry(ByteBufAllocator alloc) {
+        this.alloc = alloc;
+    }
+
+    public void subscribe(final Channel channel, final String name) {
+        if (!channelTopics(channel).add(name)) {
+            return;
+        }
+        final Topic topic = topics.compute(name, (k, t) -> {
+            if (t == null) {
+                t = new Topic();
+            }
+            t.refs++;
+            return t;
+        });
+        final EventLoop loop = channel.eventLoop();
+        runInLoop(loop, () -> {
+            // 跨线程订阅/退订时以 session 上的最终状态为准
+            if (!channelTopics(channel).contains(name)) {
+                return;
+            }
+            if (channel.isActive()) {
+                topic.shard(loop).add(channel);
+            } else if (channelTopics(channel).remove(name)) {
+                // 连接已关闭，unsubscribeAll 可能已经执行过，由这里归还订阅数
+                release(name);
+            }
+        });
+    }
+
+    public void unsubscribe(final Channel channel, final String name) {
+        if (!channelTopics(channel).remove(name)) {
+            return;
+        }
+        final Topic topic = release(name);
+        if (topic == null) {
+            return;
+        }
+        final EventLoop loop = channel.eventLoop();
+        runInLoop(loop, () -> {
+            if (!channelTopics(channel).contains(name)) {
+                topic.shard(loop).remove(channel);
+            }
+        });
+    }
+
+    /**
+     * 连接关闭时调用，在连接自己的 EventLoop 里执行
+     */
+    public void unsubscribeAll(Channel channel) {
+        if (!channel.hasAttr(TOPICS_KEY)) {
+            return;
+        }
+        Set<String> names = channel.attr(TOPICS_KEY).get();
+        for (String name : names) {
+            if (names.remove(name)) {
+                Topic topic = release(name);
+                if (topic != null) {
+                    topic.shard(channel.eventLoop()).remove(channel);
+                }
+            }
+        }
+    }
+
+    public void publishText(String name, CharSequence text) {
+        if (topics.containsKey(name)) {
+            publish(name, PreparedFrame.text(alloc, text));
+        }
+    }
+
+    public void publishBinary(String name, byte[] bytes) {
+        if (topics.containsKey(name)) {
+            publish(name, PreparedFrame.binary(alloc, bytes));
+        }
+    }
+
+    /**
+     * frame 的引用由本方法释放
+     */
+    public void publish(String name, PreparedFrame frame) {
+        try {
+            Topic topic = topics.get(name);
+            if (topic == null) {
+                return;
+            }
+            for (Map.Entry<EventLoop, Set<Channel>> entry : topic.shards.entrySet()) {
+                Broadcaster.write(entry.getKey(), entry.getValue(), frame);
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * 连接当前订阅的主题(只读)
+     */
+    public Set<String> topics(Channel channel) {
+        if (!channel.hasAttr(TOPICS_KEY)) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(channel.attr(TOPICS_KEY).get());
+    }
+
+    public Set<String> topicNames() {
+        return Collections.unmodifiableSet(topics.keySet());
+    }
+
+    /**
+     * 主题的订阅连接数
+     */
+    public int subscribers(String name) {
+        Topic topic = topics.get(name);
+        return topic == null ? 0 : topic.refs;
+    }
+
+    private Topic release(String name) {
+        final Topic[] released = new Topic[1];
+        topics.computeIfPresent(name, (k, t) -> {
+            released[0] = t;
+            return --t.refs == 0 ? null : t;
+        });
+        return released[0];
+    }
+
+    private static Set<String> channelTopics(Channel channel) {
+        Set<String> names = channel.attr(TOPICS_KEY).get();
+        if (names == null) {
+            Set<String> newNames = ConcurrentHashMap.newKeySet();
+            names = channel.attr(TOPICS_KEY).setIfAbsent(newNames);
+            if (names == null) {
+                names = newNames;
+            }
+        }
+        return names;
+    }
+
+    private static void runInLoop(EventLoop loop, Runnable task) {
+        if (loop.inEventLoop()) {
+            task.run();
+        } else {
+            try {
+                loop.execute(task);
+            } catch (RejectedExecutionException ignored) {
+                // EventLoop 已关闭，连接也随之关闭
+            }
+        }
+    }
+
+    private static final class Topic {
+        /**
+         * 订阅数，只在 topics 的 compute 中修改
+         */
+        private volatile int refs;
+        /**
+         * EventLoop 数量有限，分片创建后不再移除
+         */
+        private final ConcurrentMap<EventLoop, Set<Channel>> shards = new ConcurrentHashMap<>();
+
+        Set<Channel> shard(EventLoop loop) {
+            return shards.computeIfAbsent(loop, l -> new HashSet<>());
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.melot.websocket.model;
+
+/**
+ * 连接可写状态变化时通过 @OnEvent 通知
+ */
+public final class WritabilityEvent {
+    public static final WritabilityEvent WRITABLE = new WritabilityEvent(true);
+    public static final WritabilityEvent UNWRITABLE = new WritabilityEvent(false);
+
+    private final boolean writable;
+
+    private WritabilityEvent(boolean writable) {
+        this.writable = writable;
+    }
+
+    public boolean isWritable() {
+        return writable;
+    }
+
+    @Override
+    public String toString() {
+        return writable ? "WRITABLE" : "UNWRITABLE";
+    }
+}
@@ -6,6 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
 
 public abstract class AbstractServer {
     private Logger logger = LoggerFactory.getLogger(AbstractServer.class);
@@ -18,6 +19,10 @@ public abstract class AbstractServer {
     protected ServerEndpointConfig config;
     protected EndpointServerHandler handler;
     protected InetSocketAddress bindAddress;
+    /**
+     * 端口绑定成功时正常结束，绑定失败时异常结束
+     */
+    protected final CompletableFuture<Void> readyFuture = new CompletableFuture<>();
 
     public AbstractServer(ServerEndpointConfig config, EndpointServerHandler handler) {
         this.handler = handler;
@@ -25,10 +30,14 @@ public abstract class AbstractServer {
         this.bindAddress = new InetSocketAddress(config.getHost(), config.getPort());
     }
 
+    /**
+     * 发起绑定后立即返回，绑定结果见 {@link #readyFuture()}
+     */
     public void open() throws Exception {
         try {
             doOpen();
         } catch (Throwable t) {
+            readyFuture.completeExceptionally(t);
             if (logger.isInfoEnabled()) {
                 logger.info("Start websocket server bind " + this.bindAddress);
             }
@@ -40,7 +49,10 @@ public abstract class AbstractServer {
         this.closing = true;
     }
 
-    protected void close() {
+    /**
+     * 关闭监听 socket、所有连接和 endpoint，重复调用无效
+     */
+    public void close() {
         if (logger.isInfoEnabled()) {
             logger.info("Close Websocket Server bind " + getBindAddress());
         }
@@ -56,6 +68,17 @@ public abstract class AbstractServer {
     protected abstract void doClose();
 
 
+    public CompletableFuture<Void> readyFuture() {
+        return readyFuture;
+    }
+
+    /**
+     * 端口已绑定且未关闭
+     */
+    public boolean isReady() {
+        return readyFuture.isDone() && !readyFuture.isCompletedExceptionally() && !closed;
+    }
+
     public boolean isClosed() {
         return closed;
     }
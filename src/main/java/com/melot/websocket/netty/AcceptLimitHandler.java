@@ -0,0 +1,60 @@
+package com.melot.websocket.netty;
+
+import com.melot.websocket.metrics.EndpointMetrics;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 连接数控制，加在 server channel 上，在 boss 线程把新连接交给 worker 之前执行。
+ * <p>
+ * 超过 accepts 的连接直接关闭，不注册到 worker、不构建 pipeline；计数在连接关闭时减一
+ */
+@ChannelHandler.Sharable
+public class AcceptLimitHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(AcceptLimitHandler.class);
+
+    private final int accepts;
+    private final EndpointMetrics metrics;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ChannelFutureListener releaseListener = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            connections.decrementAndGet();
+        }
+    };
+
+    public AcceptLimitHandler(int accepts, EndpointMetrics metrics) {
+        this.accepts = accepts;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        Channel child = (Channel) msg;
+        if (connections.incrementAndGet() > accepts) {
+            connections.decrementAndGet();
+            metrics.connectionRejected();
+            logger.error("Close channel " + child.id() + ", cause: The server " + ctx.channel().localAddress() + " connections greater than max config " + accepts);
+            // 尚未注册到 EventLoop，与 ServerBootstrapAcceptor 一样强制关闭
+            child.unsafe().closeForcibly();
+            return;
+        }
+        child.closeFuture().addListener(releaseListener);
+        ctx.fireChannelRead(child);
+    }
+
+    /**
+     * 当前已接受的连接数
+     */
+    public int connections() {
+        return connections.get();
+    }
+}
@@ -0,0 +1,38 @@
+package com.melot.websocket.netty;
+
+import com.melot.websocket.model.PreparedFrame;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * 小于阈值的完整 Text/Binary 帧直接编码为原始字节，绕过 permessage-deflate 压缩器(未压缩的消息同样合法)
+ */
+@ChannelHandler.Sharable
+public class CompressionThresholdHandler extends ChannelOutboundHandlerAdapter {
+    private final int threshold;
+
+    public CompressionThresholdHandler(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame) {
+            WebSocketFrame frame = (WebSocketFrame) msg;
+            if (frame.isFinalFragment() && frame.rsv() == 0 && frame.content().readableBytes() < threshold) {
+                int opcode = msg instanceof TextWebSocketFrame ? PreparedFrame.OPCODE_TEXT : PreparedFrame.OPCODE_BINARY;
+                try {
+                    msg = PreparedFrame.encode(ctx.alloc(), opcode, frame.content());
+                } finally {
+                    frame.release();
+                }
+            }
+        }
+        ctx.write(msg, promise);
+    }
+}
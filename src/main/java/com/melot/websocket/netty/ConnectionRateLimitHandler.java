@@ -0,0 +1,78 @@
+package com.melot.websocket.netty;
+
+import com.melot.websocket.metrics.EndpointMetrics;
+import com.melot.websocket.utils.TokenBucket;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按来源 IP 限制每秒新建连接数，加在 server channel 上，与 {@link AcceptLimitHandler} 一样在 boss 线程拒绝连接。
+ * <p>
+ * 每个 IP 一个令牌桶，桶容量为一秒的配额；IP 表按最近访问顺序淘汰，最多保留 maxAddresses 个，扫描时不会无限增长。
+ * 开启 SO_REUSEPORT 时多个 boss 线程共用该表，访问加锁
+ */
+@ChannelHandler.Sharable
+public class ConnectionRateLimitHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionRateLimitHandler.class);
+
+    private final int rate;
+    private final EndpointMetrics metrics;
+    private final Map<InetAddress, TokenBucket> buckets;
+
+    /**
+     * @param rate         每个 IP 每秒新建连接数
+     * @param maxAddresses 最多记录的 IP 数
+     */
+    public ConnectionRateLimitHandler(int rate, final int maxAddresses, EndpointMetrics metrics) {
+        this.rate = rate;
+        this.metrics = metrics;
+        this.buckets = new LinkedHashMap<InetAddress, TokenBucket>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<InetAddress, TokenBucket> eldest) {
+                return size() > maxAddresses;
+            }
+        };
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        Channel child = (Channel) msg;
+        SocketAddress remote = child.remoteAddress();
+        if (remote instanceof InetSocketAddress && !tryAcquire(((InetSocketAddress) remote).getAddress())) {
+            metrics.connectionRateLimited();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Close channel " + child.id() + ", cause: connection rate of " + remote + " greater than " + rate + "/s");
+            }
+            // 尚未注册到 EventLoop，与 ServerBootstrapAcceptor 一样强制关闭
+            child.unsafe().closeForcibly();
+            return;
+        }
+        ctx.fireChannelRead(child);
+    }
+
+    private synchronized boolean tryAcquire(InetAddress address) {
+        TokenBucket bucket = buckets.get(address);
+        if (bucket == null) {
+            bucket = new TokenBucket(rate, rate);
+            buckets.put(address, bucket);
+        }
+        return bucket.tryAcquire(1);
+    }
+
+    /**
+     * 当前记录的 IP 数
+     */
+    public synchronized int addresses() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,128 @@
+package com.melot.websocket.netty;
+
+import com.melot.websocket.model.DeflateParams;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandshaker;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import org.springframework.util.ClassUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * RFC 7692 permessage-deflate 协商，每个连接一个实例。
+ * <p>
+ * 在 Netty 握手器的基础上：关闭上下文保留时强制回复 server_no_context_takeover，
+ * 并限制服务端窗口位数；握手响应写出时把协商结果记录到 {@link DeflateParams#KEY}，供广播共享压缩结果。
+ * <p>
+ * Netty 对 15 以外的窗口位数使用 JZlibEncoder，classpath 中没有 jzlib 时只协商 15 位窗口，
+ * 客户端要求更小的 server_max_window_bits 时不启用压缩。
+ */
+public class DeflateExtensionHandler extends WebSocketServerExtensionHandler {
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    private static final String SERVER_NO_CONTEXT = "server_no_context_takeover";
+    private static final String SERVER_MAX_WINDOW = "server_max_window_bits";
+    private static final boolean JZLIB = ClassUtils.isPresent("com.jcraft.jzlib.Deflater", DeflateExtensionHandler.class.getClassLoader());
+
+    private final int compressionLevel;
+    private final int threshold;
+
+    public DeflateExtensionHandler(int compressionLevel, int windowBits, boolean contextTakeover, int threshold) {
+        super(new Handshaker(compressionLevel, windowBits, contextTakeover));
+        this.compressionLevel = compressionLevel;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        super.write(ctx, msg, promise);
+        if (msg instanceof HttpResponse) {
+            // 父类已把协商结果写入响应头
+            String extensions = ((HttpResponse) msg).headers().get(HttpHeaderNames.SEC_WEBSOCKET_EXTENSIONS);
+            DeflateParams params = parse(extensions);
+            if (params != null) {
+                ctx.channel().attr(DeflateParams.KEY).set(params);
+            }
+        }
+    }
+
+    /**
+     * @return 是否支持小于 15 的服务端窗口位数
+     */
+    public static boolean supportsWindowBits() {
+        return JZLIB;
+    }
+
+    private DeflateParams parse(String extensions) {
+        if (extensions == null) {
+            return null;
+        }
+        for (String extension : extensions.split(",")) {
+            String[] parts = extension.split(";");
+            if (!PERMESSAGE_DEFLATE.equals(parts[0].trim())) {
+                continue;
+            }
+            boolean noContext = false;
+            int windowBits = PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE;
+            for (int i = 1; i < parts.length; i++) {
+                String[] kv = parts[i].trim().split("=");
+                if (SERVER_NO_CONTEXT.equals(kv[0])) {
+                    noContext = true;
+                } else if (SERVER_MAX_WINDOW.equals(kv[0]) && kv.length > 1) {
+                    windowBits = Integer.parseInt(kv[1].trim());
+                }
+            }
+            return new DeflateParams(compressionLevel, windowBits, noContext, threshold);
+        }
+        return null;
+    }
+
+    private static final class Handshaker implements WebSocketServerExtensionHandshaker {
+        private final PerMessageDeflateServerExtensionHandshaker delegate;
+        private final int windowBits;
+        private final boolean contextTakeover;
+
+        Handshaker(int compressionLevel, int windowBits, boolean contextTakeover) {
+            this.delegate = new PerMessageDeflateServerExtensionHandshaker(compressionLevel, JZLIB,
+                    PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE, true, false);
+            this.windowBits = JZLIB ? windowBits : PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE;
+            this.contextTakeover = contextTakeover;
+        }
+
+        @Override
+        public WebSocketServerExtension handshakeExtension(WebSocketExtensionData extensionData) {
+            if (!PERMESSAGE_DEFLATE.equals(extensionData.name())) {
+                return null;
+            }
+            Map<String, String> parameters = new HashMap<>(extensionData.parameters());
+            if (!contextTakeover) {
+                parameters.put(SERVER_NO_CONTEXT, null);
+            }
+            if (!JZLIB) {
+                // 要求 15 位等同于不限制；其他值由 Netty 握手器拒绝，不启用压缩
+                String requested = parameters.get(SERVER_MAX_WINDOW);
+                if (requested != null && String.valueOf(PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE).equals(requested.trim())) {
+                    parameters.remove(SERVER_MAX_WINDOW);
+                }
+            } else if (windowBits < PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE) {
+                String requested = parameters.get(SERVER_MAX_WINDOW);
+                int bits = windowBits;
+                if (requested != null) {
+                    try {
+                        bits = Math.min(bits, Integer.parseInt(requested));
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                }
+                parameters.put(SERVER_MAX_WINDOW, String.valueOf(bits));
+            }
+            return delegate.handshakeExtension(new WebSocketExtensionData(extensionData.name(), parameters));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.melot.websocket.netty;
+
+import com.melot.websocket.handler.EndpointServerHandler;
+import com.melot.websocket.handler.WebsocketServerHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+/**
+ * 同一端口多个 endpoint 时按握手请求的路径选择 endpoint，把它的 handler 加入 pipeline 后移除自己；
+ * 没有匹配的路径返回 404 并关闭连接。
+ * <p>
+ * 握手超时在建连时就开始计时，不依赖路由结果
+ */
+@ChannelHandler.Sharable
+public class EndpointRouterHandler extends ChannelInboundHandlerAdapter {
+    private final RouteTrie<WebSocketEndpoint> routes;
+    private final long handshakeTimeout;
+
+    public EndpointRouterHandler(RouteTrie<WebSocketEndpoint> routes, long handshakeTimeout) {
+        this.routes = routes;
+        this.handshakeTimeout = handshakeTimeout;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isActive()) {
+            WebsocketServerHandler.watchHandshake(ctx.channel(), handshakeTimeout);
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        WebsocketServerHandler.watchHandshake(ctx.channel(), handshakeTimeout);
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof FullHttpRequest)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        FullHttpRequest request = (FullHttpRequest) msg;
+        String uri = request.uri();
+        int query = uri.indexOf('?');
+        RouteTrie.Match<WebSocketEndpoint> match = routes.match(query < 0 ? uri : uri.substring(0, query));
+        if (match == null) {
+            request.release();
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND);
+            response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+            return;
+        }
+        if (!match.variables().isEmpty()) {
+            ctx.channel().attr(EndpointServerHandler.PATH_VARIABLES_KEY).set(match.variables());
+        }
+        match.value().addHandlers(ctx.pipeline(), uri);
+        ctx.pipeline().remove(this);
+        ctx.fireChannelRead(request);
+    }
+
+    /**
+     * 路由前断开，endpoint 的 handler 还不在 pipeline 中，这里取消握手超时
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        WebsocketServerHandler.cancelHandshakeTimeout(ctx.channel());
+        ctx.fireChannelInactive();
+    }
+}
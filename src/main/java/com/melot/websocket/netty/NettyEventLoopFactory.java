@@ -8,24 +8,67 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.ServerSocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.ThreadFactory;
 
 public class NettyEventLoopFactory {
+    private static final Logger logger = LoggerFactory.getLogger(NettyEventLoopFactory.class);
+
+    /**
+     * 进程内只选择一次，保证所有线程组与 channel 类型一致
+     */
+    private static final boolean EPOLL = selectEpoll(System.getProperty("netty.epoll.enable"));
+
     public static EventLoopGroup eventLoopGroup(int threads, String threadFactoryName) {
-        ThreadFactory threadFactory = new DefaultThreadFactory(threadFactoryName, true);
+        return eventLoopGroup(threads, new DefaultThreadFactory(threadFactoryName, true));
+    }
+
+    /**
+     * 自定义线程工厂，可用于线程绑核(如 OpenHFT AffinityThreadFactory)或设置优先级
+     */
+    public static EventLoopGroup eventLoopGroup(int threads, ThreadFactory threadFactory) {
         return shouldEpoll() ? new EpollEventLoopGroup(threads, threadFactory) :
                 new NioEventLoopGroup(threads, threadFactory);
     }
 
+    /**
+     * 所有 endpoint 共用的线程组
+     *
+     * @param bossThreads      accept 线程数
+     * @param workerThreads    IO 线程数，小于等于0时取 CPU 核数
+     * @param threadNamePrefix 线程名前缀，线程名为 prefix + Boss/Work-序号
+     */
+    public static NettyEventLoopGroups sharedEventLoopGroups(int bossThreads, int workerThreads, String threadNamePrefix) {
+        int workers = workerThreads > 0 ? workerThreads : Runtime.getRuntime().availableProcessors();
+        return new NettyEventLoopGroups(eventLoopGroup(Math.max(bossThreads, 1), threadNamePrefix + "Boss"),
+                eventLoopGroup(workers, threadNamePrefix + "Work"));
+    }
+
     public static Class<? extends ServerSocketChannel> serverSocketChannelClass() {
         return shouldEpoll() ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
     }
 
-    private static boolean shouldEpoll() {
-        if ("false".equals(System.getProperty("netty.epoll.enable"))) {
-            String osName = System.getProperty("os.name");
-            return osName.toLowerCase().contains("linux") && Epoll.isAvailable();
+    /**
+     * 是否使用 epoll 传输
+     */
+    public static boolean shouldEpoll() {
+        return EPOLL;
+    }
+
+    /**
+     * netty.epoll.enable=false 强制 NIO；未设置或为 true 时 epoll 可用(Linux 且加载了 native 库)即使用，否则回退 NIO
+     */
+    private static boolean selectEpoll(String enable) {
+        if ("false".equalsIgnoreCase(enable)) {
+            return false;
+        }
+        if (Epoll.isAvailable()) {
+            return true;
+        }
+        if ("true".equalsIgnoreCase(enable)) {
+            logger.warn("netty.epoll.enable=true but epoll is unavailable, fallback to nio", Epoll.unavailabilityCause());
         }
         return false;
     }
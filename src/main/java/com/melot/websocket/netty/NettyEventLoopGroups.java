@@ -0,0 +1,34 @@
+package com.melot.websocket.netty;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.Future;
+
+/**
+ * 多个 @ServerEndpoint 共用的 boss/worker 线程组，由 {@link NettyEventLoopFactory#sharedEventLoopGroups} 创建。
+ * <p>
+ * 共用时各 NettyServer 关闭不会关闭线程组，统一由 {@link #shutdownGracefully()} 释放(作为 Spring bean 时在容器关闭时调用)
+ */
+public class NettyEventLoopGroups {
+    private final EventLoopGroup bossGroup;
+    private final EventLoopGroup workerGroup;
+
+    public NettyEventLoopGroups(EventLoopGroup bossGroup, EventLoopGroup workerGroup) {
+        this.bossGroup = bossGroup;
+        this.workerGroup = workerGroup;
+    }
+
+    public EventLoopGroup getBossGroup() {
+        return bossGroup;
+    }
+
+    public EventLoopGroup getWorkerGroup() {
+        return workerGroup;
+    }
+
+    public void shutdownGracefully() {
+        Future<?> boss = bossGroup.shutdownGracefully();
+        Future<?> worker = workerGroup.shutdownGracefully();
+        boss.syncUninterruptibly();
+        worker.syncUninterruptibly();
+    }
+}
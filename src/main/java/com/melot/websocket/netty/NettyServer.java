@@ -3,24 +3,26 @@ package com.melot.websocket.netty;
 import com.melot.websocket.handler.EndpointServerHandler;
 import com.melot.websocket.handler.WebsocketServerHandler;
 import com.melot.websocket.model.ServerEndpointConfig;
-import com.melot.websocket.utils.NetUtils;
+import com.melot.websocket.model.Session;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.http.HttpObjectAggregator;
-import io.netty.handler.codec.http.HttpServerCodec;
-import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
-import io.netty.handler.stream.ChunkedWriteHandler;
-import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.util.concurrent.EventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 public class NettyServer extends AbstractServer {
     private Logger logger = LoggerFactory.getLogger(NettyServer.class);
@@ -28,6 +30,30 @@ public class NettyServer extends AbstractServer {
      * work threads 默认cpu+1
      */
     private final static int DEFAULT_IO_THREADS = Math.min(Runtime.getRuntime().availableProcessors() + 1, 32);
+    /**
+     * 端口级别的配置，同一端口上只取第一个 endpoint 的值
+     */
+    private static final Map<String, Function<ServerEndpointConfig, Object>> PORT_LEVEL_ATTRIBUTES = new LinkedHashMap<>();
+
+    static {
+        PORT_LEVEL_ATTRIBUTES.put("iothreads", ServerEndpointConfig::getIothreads);
+        PORT_LEVEL_ATTRIBUTES.put("accepts", ServerEndpointConfig::getAccepts);
+        PORT_LEVEL_ATTRIBUTES.put("connectionRateLimit", ServerEndpointConfig::getConnectionRateLimit);
+        PORT_LEVEL_ATTRIBUTES.put("connectionRateLimitAddresses", ServerEndpointConfig::getConnectionRateLimitAddresses);
+        PORT_LEVEL_ATTRIBUTES.put("writeBufferLowWaterMark", ServerEndpointConfig::getWriteBufferLowWaterMark);
+        PORT_LEVEL_ATTRIBUTES.put("writeBufferHighWaterMark", ServerEndpointConfig::getWriteBufferHighWaterMark);
+        PORT_LEVEL_ATTRIBUTES.put("backlog", ServerEndpointConfig::getBacklog);
+        PORT_LEVEL_ATTRIBUTES.put("reusePort", ServerEndpointConfig::isReusePort);
+        PORT_LEVEL_ATTRIBUTES.put("acceptors", ServerEndpointConfig::getAcceptors);
+        PORT_LEVEL_ATTRIBUTES.put("tcpFastOpen", ServerEndpointConfig::getTcpFastOpen);
+        PORT_LEVEL_ATTRIBUTES.put("receiveBufferSize", ServerEndpointConfig::getReceiveBufferSize);
+        PORT_LEVEL_ATTRIBUTES.put("sendBufferSize", ServerEndpointConfig::getSendBufferSize);
+        PORT_LEVEL_ATTRIBUTES.put("flushConsolidations", ServerEndpointConfig::getFlushConsolidations);
+        PORT_LEVEL_ATTRIBUTES.put("readerIdleTime", ServerEndpointConfig::getReaderIdleTime);
+        PORT_LEVEL_ATTRIBUTES.put("writeIdleTime", ServerEndpointConfig::getWriteIdleTime);
+        PORT_LEVEL_ATTRIBUTES.put("allIdleTime", ServerEndpointConfig::getAllIdleTime);
+        PORT_LEVEL_ATTRIBUTES.put("maxContentLength", ServerEndpointConfig::getMaxContentLength);
+    }
 
     /**
      * netty server bootstrap.
@@ -35,77 +61,254 @@ public class NettyServer extends AbstractServer {
     private ServerBootstrap bootstrap;
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
+    /**
+     * 共用的线程组，为 null 时使用自己创建的线程组
+     */
+    private final NettyEventLoopGroups sharedGroups;
 
-    private Channel channel;
-    private Map<String, Channel> channels;
+    /**
+     * 监听 socket，开启 SO_REUSEPORT 时有多个
+     */
+    private final List<Channel> serverChannels = new CopyOnWriteArrayList<>();
+    private final List<Map<ChannelId, Channel>> channels = new ArrayList<>();
+    /**
+     * 同一端口上的所有 endpoint，第一个即 {@link #config}/{@link #handler}
+     */
+    private final List<ServerEndpointConfig> endpointConfigs = new ArrayList<>();
+    private final List<EndpointServerHandler> endpointHandlers = new ArrayList<>();
+    /**
+     * 注册时校验路径模板，冲突的 endpoint 在注册阶段失败而不是等到绑定端口时
+     */
+    private final RouteTrie<ServerEndpointConfig> routes = new RouteTrie<>();
+    /**
+     * 从发起绑定到绑定完成的耗时（毫秒），未完成时为 -1
+     */
+    private volatile long bindTime = -1;
 
 
     public NettyServer(ServerEndpointConfig config, EndpointServerHandler handler) {
+        this(config, handler, null);
+    }
+
+    public NettyServer(ServerEndpointConfig config, EndpointServerHandler handler, NettyEventLoopGroups sharedGroups) {
         super(config, handler);
+        this.sharedGroups = sharedGroups;
+        addRoute(config);
+        this.endpointConfigs.add(config);
+        this.endpointHandlers.add(handler);
+        registerGauges(handler);
+    }
+
+    /**
+     * 在同一端口上增加一个 endpoint，握手时按路径路由；需在 {@link #open()} 之前调用。
+     * 端口级别的配置(线程数、accepts、连接限速、socket 选项、水位、空闲检测等)以及连接被拒绝的指标只属于第一个 endpoint
+     *
+     * @throws IllegalStateException    路径已被占用，或与已有路径的变量名冲突(如 /a 与 /a/、{id} 与 {rid})
+     * @throws IllegalArgumentException 路径模板格式错误
+     */
+    public void addEndpoint(ServerEndpointConfig config, EndpointServerHandler handler) {
+        addRoute(config);
+        warnPortLevelConflicts(config);
+        endpointConfigs.add(config);
+        endpointHandlers.add(handler);
+        registerGauges(handler);
+    }
+
+    private void warnPortLevelConflicts(ServerEndpointConfig config) {
+        for (Map.Entry<String, Function<ServerEndpointConfig, Object>> attribute : PORT_LEVEL_ATTRIBUTES.entrySet()) {
+            Object value = attribute.getValue().apply(config);
+            Object effective = attribute.getValue().apply(this.config);
+            if (!Objects.equals(value, effective)) {
+                logger.warn("@ServerEndpoint " + config.getPath() + " " + attribute.getKey() + "=" + value + " is ignored on port " + config.getPort()
+                        + ", port-level settings come from " + this.config.getPath() + " (" + attribute.getKey() + "=" + effective + ")");
+            }
+        }
+    }
+
+    private void addRoute(ServerEndpointConfig config) {
+        try {
+            routes.add(config.getPath(), config);
+        } catch (IllegalStateException e) {
+            throw new IllegalStateException(e.getMessage() + " on port " + config.getPort(), e);
+        }
+    }
+
+    private void registerGauges(EndpointServerHandler handler) {
+        handler.getMetrics().gauge("server.ready", () -> isReady() ? 1 : 0);
+        handler.getMetrics().gauge("server.bind.time", () -> bindTime);
+    }
+
+    /**
+     * 在该端口的所有 endpoint 中按 ChannelId 查找已完成握手的 session，不存在时返回 null
+     */
+    public Session getSession(ChannelId id) {
+        for (EndpointServerHandler endpointHandler : endpointHandlers) {
+            Session session = endpointHandler.getSession(id);
+            if (session != null) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 绑定耗时（毫秒），未完成时为 -1
+     */
+    public long getBindTime() {
+        return bindTime;
     }
 
     protected void doOpen() throws Throwable {
 
-        int ioThreads = config.getIothreads() <= 0 ? DEFAULT_IO_THREADS : config.getIothreads();
         bootstrap = new ServerBootstrap();
-        bossGroup = NettyEventLoopFactory.eventLoopGroup(1, "NettyServerBoss");
-        workerGroup = NettyEventLoopFactory.eventLoopGroup(ioThreads, "NettyServerWork");
+        boolean epoll = NettyEventLoopFactory.shouldEpoll();
+        boolean reusePort = config.isReusePort() && epoll;
+        if (config.isReusePort() && !epoll) {
+            logger.warn("SO_REUSEPORT requires the epoll transport, " + getBindAddress() + " binds a single socket");
+        }
+        final int acceptors = reusePort ? Math.max(config.getAcceptors(), 1) : 1;
+        if (sharedGroups != null) {
+            bossGroup = sharedGroups.getBossGroup();
+            workerGroup = sharedGroups.getWorkerGroup();
+            int bossThreads = executorCount(bossGroup);
+            if (acceptors > bossThreads) {
+                // 共用的 boss 线程不够时所有监听 socket 会挤在同一批线程上 accept，acceptors 单独建 boss 线程组
+                logger.info(getBindAddress() + " acceptors " + acceptors + " exceeds shared boss threads " + bossThreads + ", using a dedicated boss group");
+                bossGroup = NettyEventLoopFactory.eventLoopGroup(acceptors, "NettyServerBoss");
+            }
+        } else {
+            int ioThreads = config.getIothreads() <= 0 ? DEFAULT_IO_THREADS : config.getIothreads();
+            bossGroup = NettyEventLoopFactory.eventLoopGroup(acceptors, "NettyServerBoss");
+            workerGroup = NettyEventLoopFactory.eventLoopGroup(ioThreads, "NettyServerWork");
+        }
 
-        final WebsocketServerHandler websocketHandler = new WebsocketServerHandler(handler, config.getAccepts());
-        channels = websocketHandler.getChannels();
+        List<WebSocketEndpoint> endpoints = new ArrayList<>();
+        for (int i = 0; i < endpointConfigs.size(); i++) {
+            ServerEndpointConfig endpointConfig = endpointConfigs.get(i);
+            WebsocketServerHandler websocketHandler = new WebsocketServerHandler(endpointHandlers.get(i), endpointConfig.getHandshakeTimeout());
+            channels.add(websocketHandler.getChannels());
+            endpoints.add(new WebSocketEndpoint(endpointConfig, websocketHandler));
+        }
+        final ChannelHandler connectionRateLimitHandler = config.getConnectionRateLimit() > 0 ? new ConnectionRateLimitHandler(
+                config.getConnectionRateLimit(), config.getConnectionRateLimitAddresses(), handler.getMetrics()) : null;
+        final ChannelHandler acceptLimitHandler = config.getAccepts() > 0 ? new AcceptLimitHandler(config.getAccepts(), handler.getMetrics()) : null;
+        if (connectionRateLimitHandler != null || acceptLimitHandler != null) {
+            // connection control，在 boss 线程拒绝超出的连接；先按来源 IP 限速，被拒绝的连接不占用 accepts 名额
+            bootstrap.handler(new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(Channel ch) throws Exception {
+                    if (connectionRateLimitHandler != null) {
+                        ch.pipeline().addLast("connection-rate-limit-handler", connectionRateLimitHandler);
+                    }
+                    if (acceptLimitHandler != null) {
+                        ch.pipeline().addLast("accept-limit-handler", acceptLimitHandler);
+                    }
+                }
+            });
+        }
 
         bootstrap.group(bossGroup, workerGroup)
                 .channel(NettyEventLoopFactory.serverSocketChannelClass())
                 .option(ChannelOption.SO_REUSEADDR, Boolean.TRUE)
                 .childOption(ChannelOption.TCP_NODELAY, Boolean.TRUE)
                 .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
-                .childHandler(new ChannelInitializer<SocketChannel>() {
-                    protected void initChannel(SocketChannel ch) throws Exception {
-                        logger.info("on connected " + ch.localAddress());
-                        ChannelPipeline pipeline = ch.pipeline();
-                        //websocket协议本身是基于http协议的，所以这边也要使用http解编码器
-                        pipeline.addLast("server-idle-handler", new IdleStateHandler(config.getReaderIdleTime(), config.getWriteIdleTime(), config.getAllIdleTime(), TimeUnit.SECONDS));
-                        pipeline.addLast(new HttpServerCodec());
-                        //为了处理大文件传输的情形，以块的方式来写的处理器
-                        pipeline.addLast(new ChunkedWriteHandler());
-                        //netty是基于分段请求的，它负责把多个HttpMessage组装成一个完整的Http请求或者响应
-                        pipeline.addLast(new HttpObjectAggregator(config.getMaxContentLength()));
-                        // ws://server:port/path
-                        pipeline.addLast(new WebSocketServerProtocolHandler(getPath()));
-                        pipeline.addLast(websocketHandler);
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(config.getWriteBufferLowWaterMark(), config.getWriteBufferHighWaterMark()))
+                .childHandler(new WebSocketChannelInitializer(config, endpoints));
+        if (config.getBacklog() > 0) {
+            bootstrap.option(ChannelOption.SO_BACKLOG, config.getBacklog());
+        }
+        if (reusePort) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, Boolean.TRUE);
+        }
+        if (config.getTcpFastOpen() > 0) {
+            if (epoll) {
+                bootstrap.option(EpollChannelOption.TCP_FASTOPEN, config.getTcpFastOpen());
+            } else {
+                logger.warn("TCP_FASTOPEN requires the epoll transport, ignored on " + getBindAddress());
+            }
+        }
+        if (config.getReceiveBufferSize() > 0) {
+            // 设在监听 socket 上，accept 出的连接在握手时就按该值协商窗口缩放
+            bootstrap.option(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+            bootstrap.childOption(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+        }
+        if (config.getSendBufferSize() > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, config.getSendBufferSize());
+        }
+        // 绑定端口，开始接收进来的连接；不阻塞调用线程，结果通过 readyFuture 通知
+        // reusePort 时同一地址绑定 acceptors 个 socket，依次注册到 boss 线程组的不同 EventLoop 上
+        final long bindStart = System.nanoTime();
+        final AtomicInteger pendingBinds = new AtomicInteger(acceptors);
+        final AtomicInteger openChannels = new AtomicInteger(acceptors);
+        ChannelFutureListener bindListener = new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess()) {
+                    if (readyFuture.completeExceptionally(future.cause())) {
+                        bindTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - bindStart);
                     }
-                });
-        // 绑定端口，开始接收进来的连接
-        ChannelFuture channelFuture = bootstrap.bind(getBindAddress()).sync();
-        logger.info(NettyServer.class + " 启动正在监听： " + channelFuture.channel().localAddress());
-        // 等待服务器  socket 关闭
-        channelFuture.channel().closeFuture().addListener(new ChannelFutureListener() {
+                    for (Channel serverChannel : serverChannels) {
+                        serverChannel.close();
+                    }
+                } else if (pendingBinds.decrementAndGet() == 0 && !readyFuture.isDone()) {
+                    bindTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - bindStart);
+                    logger.info(NettyServer.class + " 启动正在监听： " + future.channel().localAddress()
+                            + (acceptors > 1 ? " x" + acceptors : "") + " bind " + bindTime + "ms");
+                    readyFuture.complete(null);
+                }
+            }
+        };
+        // 所有监听 socket 关闭（含绑定失败）时释放自己创建的线程组
+        ChannelFutureListener closeListener = new ChannelFutureListener() {
             @Override
             public void operationComplete(ChannelFuture future) throws Exception {
-                bossGroup.shutdownGracefully();
-                workerGroup.shutdownGracefully();
+                if (openChannels.decrementAndGet() == 0) {
+                    if (sharedGroups == null || bossGroup != sharedGroups.getBossGroup()) {
+                        bossGroup.shutdownGracefully();
+                    }
+                    if (sharedGroups == null) {
+                        workerGroup.shutdownGracefully();
+                    }
+                }
             }
-        }).sync();
-        channel = channelFuture.channel();
+        };
+        for (int i = 0; i < acceptors; i++) {
+            ChannelFuture channelFuture = bootstrap.bind(getBindAddress());
+            serverChannels.add(channelFuture.channel());
+            channelFuture.addListener(bindListener);
+            channelFuture.channel().closeFuture().addListener(closeListener);
+        }
+    }
+
+    private static int executorCount(EventLoopGroup group) {
+        int count = 0;
+        for (EventExecutor ignored : group) {
+            count++;
+        }
+        return count;
     }
 
     private Collection<Channel> getChannels() {
         Collection<Channel> chs = new HashSet<Channel>();
-        for (Channel channel : this.channels.values()) {
-            if (channel.isActive()) {
-                chs.add(channel);
-            } else {
-                channels.remove(NetUtils.toAddressString((InetSocketAddress) channel.remoteAddress()));
+        for (Map<ChannelId, Channel> endpointChannels : this.channels) {
+            for (Channel channel : endpointChannels.values()) {
+                if (channel.isActive()) {
+                    chs.add(channel);
+                } else {
+                    endpointChannels.remove(channel.id());
+                }
             }
         }
         return chs;
     }
 
     protected void doClose() {
-        try {
-            if (channel != null) channel.close();
-        } catch (Throwable e) {
-            logger.warn(e.getMessage(), e);
+        for (Channel channel : serverChannels) {
+            try {
+                channel.close();
+            } catch (Throwable e) {
+                logger.warn(e.getMessage(), e);
+            }
         }
 
         Collection<Channel> channels = getChannels();
@@ -126,5 +329,13 @@ public class NettyServer extends AbstractServer {
         } catch (Throwable e) {
             logger.warn(e.getMessage(), e);
         }
+
+        for (EndpointServerHandler handler : endpointHandlers) {
+            try {
+                handler.close();
+            } catch (Throwable e) {
+                logger.warn(e.getMessage(), e);
+            }
+        }
     }
 }
@@ -1,7 +1,9 @@
 package com.melot.websocket.netty;
 
 import com.melot.websocket.spring.ServerEndpointExporter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -13,6 +15,18 @@ public class NettyWebSocketSelector {
     public ServerEndpointExporter serverEndpointExporter() {
         return new ServerEndpointExporter();
     }
+
+    /**
+     * netty.websocket.shared-event-loop=true 时所有 endpoint 共用一组 boss/worker 线程，各 endpoint 的 iothreads 不再生效
+     */
+    @Bean(destroyMethod = "shutdownGracefully")
+    @ConditionalOnMissingBean(NettyEventLoopGroups.class)
+    @ConditionalOnProperty(prefix = "netty.websocket", name = "shared-event-loop", havingValue = "true")
+    public NettyEventLoopGroups nettyEventLoopGroups(@Value("${netty.websocket.boss-threads:1}") int bossThreads,
+                                                     @Value("${netty.websocket.worker-threads:0}") int workerThreads,
+                                                     @Value("${netty.websocket.thread-name-prefix:NettyServer}") String threadNamePrefix) {
+        return NettyEventLoopFactory.sharedEventLoopGroups(bossThreads, workerThreads, threadNamePrefix);
+    }
 }
 
 
@@ -0,0 +1,136 @@
+package com.melot.websocket.netty;
+
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按路径段组织的路由树，支持 /room/{id} 形式的变量段。
+ * <p>
+ * 启动时构建，之后只读；匹配时逐段下降，字面量段优先于变量段，耗时与路径长度成正比
+ */
+public class RouteTrie<T> {
+    private final Node<T> root = new Node<>();
+
+    /**
+     * @throws IllegalStateException    路径已注册
+     * @throws IllegalArgumentException 模板格式错误
+     */
+    public void add(String template, T value) {
+        Node<T> node = root;
+        for (String segment : segments(template)) {
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                String name = segment.substring(1, segment.length() - 1);
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Empty path variable in " + template);
+                }
+                if (node.variable == null) {
+                    node.variable = new Node<>();
+                    node.variableName = name;
+                } else if (!node.variableName.equals(name)) {
+                    throw new IllegalStateException("Path variable {" + name + "} in " + template + " conflicts with {" + node.variableName + "}");
+                }
+                node = node.variable;
+            } else if (segment.indexOf('{') >= 0 || segment.indexOf('}') >= 0) {
+                throw new IllegalArgumentException("Path variable must be a whole segment: " + template);
+            } else {
+                node = node.literals.computeIfAbsent(segment, s -> new Node<>());
+            }
+        }
+        if (node.value != null) {
+            throw new IllegalStateException("path already bind " + template);
+        }
+        node.value = value;
+    }
+
+    /**
+     * @param path 不含 query 的请求路径
+     * @return 未匹配时返回 null
+     */
+    public Match<T> match(String path) {
+        return match(root, path, 0, null);
+    }
+
+    public boolean hasVariables() {
+        return hasVariables(root);
+    }
+
+    private static <T> boolean hasVariables(Node<T> node) {
+        if (node.variable != null) {
+            return true;
+        }
+        for (Node<T> child : node.literals.values()) {
+            if (hasVariables(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> Match<T> match(Node<T> node, String path, int start, Map<String, String> variables) {
+        // 跳过连续的 '/'
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        if (start >= path.length()) {
+            return node.value == null ? null : new Match<>(node.value, variables);
+        }
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+        Node<T> literal = node.literals.get(path.substring(start, end));
+        if (literal != null) {
+            Match<T> match = match(literal, path, end, variables);
+            if (match != null) {
+                return match;
+            }
+        }
+        if (node.variable != null) {
+            Map<String, String> vars = variables == null ? new LinkedHashMap<>() : new LinkedHashMap<>(variables);
+            vars.put(node.variableName, decodeSegment(path.substring(start, end)));
+            return match(node.variable, path, end, vars);
+        }
+        return null;
+    }
+
+    /**
+     * 路径段只做百分号解码，'+' 转空格是 query string 的规则，路径中保持原样
+     */
+    private static String decodeSegment(String segment) {
+        return QueryStringDecoder.decodeComponent(segment.indexOf('+') < 0 ? segment : segment.replace("+", "%2B"));
+    }
+
+    private static String[] segments(String template) {
+        String trimmed = template.replaceAll("^/+|/+$", "");
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/+");
+    }
+
+    public static final class Match<T> {
+        private final T value;
+        private final Map<String, String> variables;
+
+        Match(T value, Map<String, String> variables) {
+            this.value = value;
+            this.variables = variables == null ? Collections.<String, String>emptyMap() : Collections.unmodifiableMap(variables);
+        }
+
+        public T value() {
+            return value;
+        }
+
+        public Map<String, String> variables() {
+            return variables;
+        }
+    }
+
+    private static final class Node<T> {
+        private final Map<String, Node<T>> literals = new HashMap<>();
+        private Node<T> variable;
+        private String variableName;
+        private T value;
+    }
+}
@@ -0,0 +1,74 @@
+package com.melot.websocket.netty;
+
+import com.melot.websocket.handler.WebsocketServerHandler;
+import com.melot.websocket.model.ServerEndpointConfig;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 {@link ServerEndpointConfig} 构建每个连接的 pipeline。
+ * <p>
+ * 端口上只有一个固定路径的 endpoint 时直接装配；多个 endpoint 或路径带变量时先装 {@link EndpointRouterHandler}，
+ * 握手请求到达后再按路径装配对应 endpoint
+ */
+public class WebSocketChannelInitializer extends ChannelInitializer<Channel> {
+    private Logger logger = LoggerFactory.getLogger(WebSocketChannelInitializer.class);
+
+    /**
+     * 端口级别的配置，取该端口上第一个 endpoint 的配置
+     */
+    private final ServerEndpointConfig config;
+    private final WebSocketEndpoint endpoint;
+    private final EndpointRouterHandler routerHandler;
+
+    public WebSocketChannelInitializer(ServerEndpointConfig config, WebsocketServerHandler websocketHandler) {
+        this(config, Collections.singletonList(new WebSocketEndpoint(config, websocketHandler)));
+    }
+
+    public WebSocketChannelInitializer(ServerEndpointConfig config, List<WebSocketEndpoint> endpoints) {
+        this.config = config;
+        RouteTrie<WebSocketEndpoint> routes = new RouteTrie<>();
+        for (WebSocketEndpoint endpoint : endpoints) {
+            routes.add(endpoint.getConfig().getPath(), endpoint);
+        }
+        if (endpoints.size() == 1 && !routes.hasVariables()) {
+            this.endpoint = endpoints.get(0);
+            this.routerHandler = null;
+        } else {
+            this.endpoint = null;
+            this.routerHandler = new EndpointRouterHandler(routes, config.getHandshakeTimeout());
+        }
+    }
+
+    @Override
+    protected void initChannel(Channel ch) throws Exception {
+        logger.info("on connected " + ch.localAddress());
+        ChannelPipeline pipeline = ch.pipeline();
+        if (config.getFlushConsolidations() > 0) {
+            // 合并同一读周期或同一 EventLoop tick 内的 flush，减少 write 系统调用
+            pipeline.addLast("flush-consolidation-handler", new FlushConsolidationHandler(config.getFlushConsolidations(), true));
+        }
+        //websocket协议本身是基于http协议的，所以这边也要使用http解编码器
+        pipeline.addLast("server-idle-handler", new IdleStateHandler(config.getReaderIdleTime(), config.getWriteIdleTime(), config.getAllIdleTime(), TimeUnit.SECONDS));
+        // HttpServerCodec、HttpObjectAggregator 在握手时由 netty 移除，升级后的 pipeline 只保留 websocket 相关 handler
+        pipeline.addLast(new HttpServerCodec());
+        //netty是基于分段请求的，它负责把多个HttpMessage组装成一个完整的Http请求或者响应
+        pipeline.addLast(new HttpObjectAggregator(config.getMaxContentLength()));
+        if (endpoint != null) {
+            endpoint.addHandlers(pipeline, endpoint.getConfig().getPath());
+        } else {
+            pipeline.addLast("endpoint-router", routerHandler);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.melot.websocket.netty;
+
+import com.melot.websocket.handler.MessageAggregator;
+import com.melot.websocket.handler.MessageStreamHandler;
+import com.melot.websocket.handler.OutboundMetricsHandler;
+import com.melot.websocket.handler.OutboundPolicyHandler;
+import com.melot.websocket.handler.PongHandler;
+import com.melot.websocket.handler.RateLimitHandler;
+import com.melot.websocket.handler.WebsocketServerHandler;
+import com.melot.websocket.model.MessageMode;
+import com.melot.websocket.model.OutboundPolicy;
+import com.melot.websocket.model.ServerEndpointConfig;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 一个 @ServerEndpoint 在 pipeline 中的部分：从 permessage-deflate 协商到业务 handler，
+ * 同一端口的多个 endpoint 共用前面的 HTTP 编解码部分
+ */
+public class WebSocketEndpoint {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketEndpoint.class);
+
+    private final ServerEndpointConfig config;
+    private final WebsocketServerHandler websocketHandler;
+    private final CompressionThresholdHandler compressionThresholdHandler;
+    private final OutboundMetricsHandler outboundMetricsHandler;
+    private final PongHandler pongHandler;
+
+    public WebSocketEndpoint(ServerEndpointConfig config, WebsocketServerHandler websocketHandler) {
+        this.config = config;
+        this.websocketHandler = websocketHandler;
+        this.compressionThresholdHandler = new CompressionThresholdHandler(config.getCompressionThreshold());
+        this.outboundMetricsHandler = new OutboundMetricsHandler(websocketHandler.getMetrics());
+        this.pongHandler = websocketHandler.getHeartbeat() == null ? null : new PongHandler(websocketHandler.getHeartbeat());
+        if (config.isCompression() && config.getCompressionWindowBits() < 15 && !DeflateExtensionHandler.supportsWindowBits()) {
+            logger.warn("Endpoint " + config.getPath() + " compressionWindowBits " + config.getCompressionWindowBits()
+                    + " requires com.jcraft:jzlib, using 15");
+        }
+    }
+
+    /**
+     * @param websocketPath 交给 WebSocketServerProtocolHandler 校验的请求路径
+     */
+    public void addHandlers(ChannelPipeline pipeline, String websocketPath) {
+        if (config.isCompression()) {
+            // permessage-deflate 协商
+            pipeline.addLast(new DeflateExtensionHandler(config.getCompressionLevel(), config.getCompressionWindowBits(),
+                    config.isCompressionContextTakeover(), config.getCompressionThreshold()));
+        }
+        if (pongHandler != null) {
+            // 心跳 pong 在 WebSocketServerProtocolHandler 中会被丢弃，需在它之前截获
+            pipeline.addLast("pong-handler", pongHandler);
+        }
+        // ws://server:port/path
+        pipeline.addLast(new WebSocketServerProtocolHandler(websocketPath, null, config.isCompression(), config.getMaxFramePayloadLength()));
+        if (config.getMessageRateLimit() > 0 || config.getByteRateLimit() > 0) {
+            // session 限流，在分发到业务回调之前
+            pipeline.addLast("rate-limit-handler", new RateLimitHandler(config.getMessageRateLimit(), config.getByteRateLimit(),
+                    config.getRateLimitPolicy(), websocketHandler.getMetrics()));
+        }
+        if (config.getMessageMode() == MessageMode.AGGREGATE) {
+            pipeline.addLast("message-aggregator", new MessageAggregator(config.getMaxMessageSize()));
+        } else if (config.getMessageMode() == MessageMode.FRAME || config.getMessageMode() == MessageMode.STREAM) {
+            pipeline.addLast("message-stream-handler", new MessageStreamHandler());
+        }
+        if (config.isCompression() && config.getCompressionThreshold() > 0) {
+            pipeline.addLast(compressionThresholdHandler);
+        }
+        pipeline.addLast("outbound-metrics-handler", outboundMetricsHandler);
+        if (config.getOutboundPolicy() != OutboundPolicy.NONE || config.getUnwritableTimeout() > 0) {
+            // 慢消费者保护
+            pipeline.addLast("outbound-policy-handler", new OutboundPolicyHandler(config.getOutboundPolicy(),
+                    config.getOutboundQueueSize(), config.getUnwritableTimeout(), websocketHandler.getMetrics()));
+        }
+        pipeline.addLast(websocketHandler);
+    }
+
+    public ServerEndpointConfig getConfig() {
+        return config;
+    }
+
+    public WebsocketServerHandler getWebsocketHandler() {
+        return websocketHandler;
+    }
+}
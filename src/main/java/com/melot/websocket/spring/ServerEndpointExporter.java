@@ -2,10 +2,19 @@ package com.melot.websocket.spring;
 
 import com.melot.websocket.annotation.ServerEndpoint;
 import com.melot.websocket.handler.EndpointServerHandler;
+import com.melot.websocket.metrics.MetricsExporter;
+import com.melot.websocket.model.InstanceStrategy;
+import com.melot.websocket.model.MessageMode;
 import com.melot.websocket.model.MethodMapping;
+import com.melot.websocket.model.OutboundPolicy;
+import com.melot.websocket.model.OverflowPolicy;
+import com.melot.websocket.model.RateLimitPolicy;
 import com.melot.websocket.model.ServerEndpointConfig;
+import com.melot.websocket.model.Session;
+import com.melot.websocket.netty.NettyEventLoopGroups;
 import com.melot.websocket.netty.NettyServer;
 import com.melot.websocket.utils.NetUtils;
+import io.netty.channel.ChannelId;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.TypeConverter;
 import org.springframework.beans.TypeMismatchException;
@@ -16,25 +25,107 @@ import org.springframework.beans.factory.config.BeanExpressionContext;
 import org.springframework.beans.factory.config.BeanExpressionResolver;
 import org.springframework.beans.factory.support.AbstractBeanFactory;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.context.support.ApplicationObjectSupport;
 import org.springframework.core.annotation.AnnotatedElementUtils;
 
 import java.net.InetSocketAddress;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
-public class ServerEndpointExporter extends ApplicationObjectSupport implements SmartInitializingSingleton, BeanFactoryAware {
+/**
+ * 注册并启动所有 @ServerEndpoint。
+ * <p>
+ * netty 线程都是 daemon 线程，没有 web 容器的应用在 main 返回后会直接退出，
+ * 因此启动后保留一个非 daemon 的等待线程，容器关闭时关闭所有 server 并释放该线程
+ */
+public class ServerEndpointExporter extends ApplicationObjectSupport implements SmartInitializingSingleton, SmartLifecycle, BeanFactoryAware {
     private final Map<InetSocketAddress, NettyServer> nettyServerMap = new HashMap<>();
 
     private AbstractBeanFactory beanFactory;
+    private final CountDownLatch stopLatch = new CountDownLatch(1);
+    private volatile boolean running;
 
     @Override
     public void afterSingletonsInstantiated() {
         registerEndpoints();
     }
 
+    @Override
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        if (!nettyServerMap.isEmpty()) {
+            Thread awaitThread = new Thread("NettyWebSocketAwait") {
+                @Override
+                public void run() {
+                    try {
+                        stopLatch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            awaitThread.setContextClassLoader(getClass().getClassLoader());
+            awaitThread.setDaemon(false);
+            awaitThread.start();
+        }
+    }
+
+    /**
+     * 容器关闭时关闭所有 server，连同各 endpoint 的业务线程池、心跳等
+     */
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            for (Map.Entry<InetSocketAddress, NettyServer> entry : nettyServerMap.entrySet()) {
+                try {
+                    entry.getValue().close();
+                } catch (Exception e) {
+                    logger.warn("websocket netty server close " + NetUtils.toAddressString(entry.getKey()) + " error: ", e);
+                }
+            }
+        } finally {
+            stopLatch.countDown();
+        }
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    /**
+     * 最后启动、最先停止，先断开连接再销毁 endpoint 依赖的 bean
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
     @Override
     public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
         if (!(beanFactory instanceof AbstractBeanFactory)) {
@@ -77,17 +168,29 @@ public class ServerEndpointExporter extends ApplicationObjectSupport implements
 
         ServerEndpointConfig serverEndpointConfig = getEndpointConfig(annotation);
         InetSocketAddress address = new InetSocketAddress(serverEndpointConfig.getHost(), serverEndpointConfig.getPort());
+        EndpointServerHandler handler = new EndpointServerHandler(methodMapping, serverEndpointConfig);
         NettyServer nettyServer = nettyServerMap.get(address);
         if (nettyServer != null) {
-            throw new IllegalStateException("port already bean bind " + serverEndpointConfig.getPort());
+            // 同一端口上的多个 endpoint 按路径路由
+            nettyServer.addEndpoint(serverEndpointConfig, handler);
+        } else {
+            nettyServer = new NettyServer(serverEndpointConfig, handler, getSharedEventLoopGroups());
+            nettyServerMap.put(address, nettyServer);
+        }
+        // 在 server 注册完自身的 gauge 之后再导出
+        if (context != null) {
+            for (MetricsExporter exporter : context.getBeansOfType(MetricsExporter.class).values()) {
+                exporter.bind(handler.getMetrics());
+            }
         }
-        EndpointServerHandler handler = new EndpointServerHandler(methodMapping, serverEndpointConfig);
-        nettyServer = new NettyServer(serverEndpointConfig, handler);
-        nettyServerMap.put(address, nettyServer);
     }
 
 
+    /**
+     * 先对所有端口发起绑定，再等待全部绑定完成（成功或失败）后返回
+     */
     private void init() {
+        long start = System.nanoTime();
         for (Map.Entry<InetSocketAddress, NettyServer> entry : nettyServerMap.entrySet()) {
             InetSocketAddress address = entry.getKey();
             NettyServer nettyServer = entry.getValue();
@@ -97,6 +200,52 @@ public class ServerEndpointExporter extends ApplicationObjectSupport implements
                 logger.error("websocket netty server open " + NetUtils.toAddressString(address) + " error: ", e);
             }
         }
+        for (Map.Entry<InetSocketAddress, NettyServer> entry : nettyServerMap.entrySet()) {
+            InetSocketAddress address = entry.getKey();
+            NettyServer nettyServer = entry.getValue();
+            try {
+                nettyServer.readyFuture().get();
+                logger.info("websocket netty server " + NetUtils.toAddressString(address) + " ready, bind " + nettyServer.getBindTime() + "ms");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                logger.error("websocket netty server bind " + NetUtils.toAddressString(address) + " error: ", e.getCause());
+            }
+        }
+        logger.info("websocket netty servers started in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    }
+
+    /**
+     * 按绑定地址返回所有 server，可通过 {@link NettyServer#isReady()}/{@link NettyServer#readyFuture()} 检查就绪状态
+     */
+    public Map<InetSocketAddress, NettyServer> getNettyServers() {
+        return Collections.unmodifiableMap(nettyServerMap);
+    }
+
+    /**
+     * 在所有 endpoint 中按 ChannelId 查找已完成握手的 session，不存在时返回 null；
+     * 每个 endpoint 内是 O(1) 查找，耗时只与端口和 endpoint 数有关
+     */
+    public Session getSession(ChannelId id) {
+        for (NettyServer nettyServer : nettyServerMap.values()) {
+            Session session = nettyServer.getSession(id);
+            if (session != null) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 容器中存在唯一的 {@link NettyEventLoopGroups} 时所有 endpoint 共用
+     */
+    private NettyEventLoopGroups getSharedEventLoopGroups() {
+        ApplicationContext context = getApplicationContext();
+        if (context == null || context.getBeanNamesForType(NettyEventLoopGroups.class).length != 1) {
+            return null;
+        }
+        return context.getBean(NettyEventLoopGroups.class);
     }
 
     private ServerEndpointConfig getEndpointConfig(ServerEndpoint annotation) {
@@ -107,10 +256,43 @@ public class ServerEndpointExporter extends ApplicationObjectSupport implements
         serverEndpointConfig.setIothreads(resolveAnnotationValue(annotation.iothreads(), Integer.class, "iothreads"));
         serverEndpointConfig.setAccepts(resolveAnnotationValue(annotation.accepts(), Integer.class, "accept"));
         serverEndpointConfig.setHeartbeat(resolveAnnotationValue(annotation.heartbeat(), Integer.class, "heartbeat"));
+        serverEndpointConfig.setHeartbeatMaxMissed(resolveAnnotationValue(annotation.heartbeatMaxMissed(), Integer.class, "heartbeatMaxMissed"));
         serverEndpointConfig.setReaderIdleTime(resolveAnnotationValue(annotation.readerIdleTime(), Integer.class, "readerIdleTime"));
         serverEndpointConfig.setWriteIdleTime(resolveAnnotationValue(annotation.writeIdleTime(), Integer.class, "writeIdleTime"));
         serverEndpointConfig.setAllIdleTime(resolveAnnotationValue(annotation.allIdleTime(), Integer.class, "allIdleTime"));
         serverEndpointConfig.setMaxContentLength(resolveAnnotationValue(annotation.maxContentLength(), Integer.class, "maxContentLength"));
+        serverEndpointConfig.setHandshakeTimeout(resolveAnnotationValue(annotation.handshakeTimeout(), Integer.class, "handshakeTimeout"));
+        serverEndpointConfig.setWriteBufferLowWaterMark(resolveAnnotationValue(annotation.writeBufferLowWaterMark(), Integer.class, "writeBufferLowWaterMark"));
+        serverEndpointConfig.setWriteBufferHighWaterMark(resolveAnnotationValue(annotation.writeBufferHighWaterMark(), Integer.class, "writeBufferHighWaterMark"));
+        serverEndpointConfig.setOutboundPolicy(resolveAnnotationValue(annotation.outboundPolicy(), OutboundPolicy.class, "outboundPolicy"));
+        serverEndpointConfig.setOutboundQueueSize(resolveAnnotationValue(annotation.outboundQueueSize(), Integer.class, "outboundQueueSize"));
+        serverEndpointConfig.setUnwritableTimeout(resolveAnnotationValue(annotation.unwritableTimeout(), Integer.class, "unwritableTimeout"));
+        serverEndpointConfig.setCompression(resolveAnnotationValue(annotation.compression(), Boolean.class, "compression"));
+        serverEndpointConfig.setCompressionLevel(resolveAnnotationValue(annotation.compressionLevel(), Integer.class, "compressionLevel"));
+        serverEndpointConfig.setCompressionWindowBits(resolveAnnotationValue(annotation.compressionWindowBits(), Integer.class, "compressionWindowBits"));
+        serverEndpointConfig.setCompressionContextTakeover(resolveAnnotationValue(annotation.compressionContextTakeover(), Boolean.class, "compressionContextTakeover"));
+        serverEndpointConfig.setCompressionThreshold(resolveAnnotationValue(annotation.compressionThreshold(), Integer.class, "compressionThreshold"));
+        serverEndpointConfig.setFlushConsolidations(resolveAnnotationValue(annotation.flushConsolidations(), Integer.class, "flushConsolidations"));
+        serverEndpointConfig.setBusinessThreads(resolveAnnotationValue(annotation.businessThreads(), Integer.class, "businessThreads"));
+        serverEndpointConfig.setSessionQueueSize(resolveAnnotationValue(annotation.sessionQueueSize(), Integer.class, "sessionQueueSize"));
+        serverEndpointConfig.setOverflowPolicy(resolveAnnotationValue(annotation.overflowPolicy(), OverflowPolicy.class, "overflowPolicy"));
+        serverEndpointConfig.setIndexes(resolveAnnotationValue(annotation.indexes(), String[].class, "indexes"));
+        serverEndpointConfig.setBacklog(resolveAnnotationValue(annotation.backlog(), Integer.class, "backlog"));
+        serverEndpointConfig.setReusePort(resolveAnnotationValue(annotation.reusePort(), Boolean.class, "reusePort"));
+        serverEndpointConfig.setAcceptors(resolveAnnotationValue(annotation.acceptors(), Integer.class, "acceptors"));
+        serverEndpointConfig.setTcpFastOpen(resolveAnnotationValue(annotation.tcpFastOpen(), Integer.class, "tcpFastOpen"));
+        serverEndpointConfig.setSendBufferSize(resolveAnnotationValue(annotation.sendBufferSize(), Integer.class, "sendBufferSize"));
+        serverEndpointConfig.setReceiveBufferSize(resolveAnnotationValue(annotation.receiveBufferSize(), Integer.class, "receiveBufferSize"));
+        serverEndpointConfig.setMessageRateLimit(resolveAnnotationValue(annotation.messageRateLimit(), Integer.class, "messageRateLimit"));
+        serverEndpointConfig.setByteRateLimit(resolveAnnotationValue(annotation.byteRateLimit(), Integer.class, "byteRateLimit"));
+        serverEndpointConfig.setRateLimitPolicy(resolveAnnotationValue(annotation.rateLimitPolicy(), RateLimitPolicy.class, "rateLimitPolicy"));
+        serverEndpointConfig.setConnectionRateLimit(resolveAnnotationValue(annotation.connectionRateLimit(), Integer.class, "connectionRateLimit"));
+        serverEndpointConfig.setConnectionRateLimitAddresses(resolveAnnotationValue(annotation.connectionRateLimitAddresses(), Integer.class, "connectionRateLimitAddresses"));
+        serverEndpointConfig.setInstanceStrategy(resolveAnnotationValue(annotation.instanceStrategy(), InstanceStrategy.class, "instanceStrategy"));
+        serverEndpointConfig.setInstancePoolSize(resolveAnnotationValue(annotation.instancePoolSize(), Integer.class, "instancePoolSize"));
+        serverEndpointConfig.setMaxFramePayloadLength(resolveAnnotationValue(annotation.maxFramePayloadLength(), Integer.class, "maxFramePayloadLength"));
+        serverEndpointConfig.setMessageMode(resolveAnnotationValue(annotation.messageMode(), MessageMode.class, "messageMode"));
+        serverEndpointConfig.setMaxMessageSize(resolveAnnotationValue(annotation.maxMessageSize(), Integer.class, "maxMessageSize"));
         return serverEndpointConfig;
     }
 
@@ -0,0 +1,27 @@
+package com.melot.websocket.support;
+
+import com.melot.websocket.annotation.OnBinary;
+import com.melot.websocket.annotation.OnMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import org.springframework.core.MethodParameter;
+
+/**
+ * 直接把 frame 的池化内容交给 @OnMessage/@OnBinary，不做拷贝。
+ * <p>
+ * 该 {@link ByteBuf} 只在回调执行期间有效(借用)，回调返回后 frame 会被释放；
+ * 如需在回调之外继续使用，必须自行 {@link ByteBuf#retain()} 并在用完后 {@link ByteBuf#release()}。
+ */
+public class ByteBufMethodArgumentResolver implements MethodArgumentResolver {
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return (parameter.getMethod().isAnnotationPresent(OnMessage.class) || parameter.getMethod().isAnnotationPresent(OnBinary.class))
+                && parameter.getParameterType() == ByteBuf.class;
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
+        return ((ByteBufHolder) object).content();
+    }
+}
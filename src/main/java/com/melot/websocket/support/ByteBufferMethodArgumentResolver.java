@@ -0,0 +1,29 @@
+package com.melot.websocket.support;
+
+import com.melot.websocket.annotation.OnBinary;
+import com.melot.websocket.annotation.OnMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import org.springframework.core.MethodParameter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 以只读 {@link ByteBuffer} 视图的方式暴露 frame 内容，与 frame 共享内存，不做拷贝。
+ * <p>
+ * 该视图只在回调执行期间有效(借用)，回调返回后底层内存会被回收，不能保存到回调之外。
+ */
+public class ByteBufferMethodArgumentResolver implements MethodArgumentResolver {
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return (parameter.getMethod().isAnnotationPresent(OnMessage.class) || parameter.getMethod().isAnnotationPresent(OnBinary.class))
+                && parameter.getParameterType() == ByteBuffer.class;
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
+        ByteBuf content = ((ByteBufHolder) object).content();
+        return content.nioBuffer().asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,24 @@
+package com.melot.websocket.support;
+
+import com.melot.websocket.annotation.OnMessage;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.springframework.core.MethodParameter;
+
+/**
+ * @OnMessage 声明 {@link CharSequence} 参数时，传入基于 frame 内容的延迟解码视图 {@link FrameCharSequence}，
+ * 未访问时不解码，纯 ASCII 内容直接从池化内存读取。
+ * <p>
+ * 该视图只在回调执行期间有效(借用)，需要保存时请调用 {@code toString()}。
+ */
+public class CharSequenceMethodArgumentResolver implements MethodArgumentResolver {
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.getMethod().isAnnotationPresent(OnMessage.class) && CharSequence.class == parameter.getParameterType();
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
+        return new FrameCharSequence(((TextWebSocketFrame) object).content());
+    }
+}
@@ -0,0 +1,51 @@
+package com.melot.websocket.support;
+
+import com.melot.websocket.annotation.OnBinary;
+import com.melot.websocket.annotation.OnMessage;
+import com.melot.websocket.codec.MessageCodec;
+import com.melot.websocket.codec.MessageCodecs;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import org.springframework.core.MethodParameter;
+
+/**
+ * @OnMessage/@OnBinary 的 POJO 参数，由 {@link MessageCodec} 直接从 frame 内容解码。
+ * <p>
+ * 排在内置 resolver 之后；注册期通过 {@link #forParameter(MethodParameter)} 为每个参数绑定 codec，收到消息时不再查找
+ */
+public class CodecMethodArgumentResolver implements MethodArgumentResolver {
+    private final MessageCodecs codecs;
+    private final MessageCodec codec;
+    private final Class<?> type;
+
+    public CodecMethodArgumentResolver(MessageCodecs codecs) {
+        this(codecs, null, null);
+    }
+
+    private CodecMethodArgumentResolver(MessageCodecs codecs, MessageCodec codec, Class<?> type) {
+        this.codecs = codecs;
+        this.codec = codec;
+        this.type = type;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return (parameter.getMethod().isAnnotationPresent(OnMessage.class) || parameter.getMethod().isAnnotationPresent(OnBinary.class))
+                && codecs.find(parameter.getParameterType()) != null;
+    }
+
+    /**
+     * 绑定该参数类型的 codec
+     */
+    public CodecMethodArgumentResolver forParameter(MethodParameter parameter) {
+        Class<?> parameterType = parameter.getParameterType();
+        return new CodecMethodArgumentResolver(codecs, codecs.find(parameterType), parameterType);
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
+        MessageCodec codec = this.codec != null ? this.codec : codecs.find(parameter.getParameterType());
+        Class<?> type = this.type != null ? this.type : parameter.getParameterType();
+        return codec.decode(((ByteBufHolder) object).content(), type);
+    }
+}
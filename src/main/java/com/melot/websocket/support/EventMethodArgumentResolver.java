@@ -24,6 +24,9 @@ public class EventMethodArgumentResolver implements MethodArgumentResolver {
         if (object == null) {
             return null;
         }
+        if (parameter.getParameterType().isInstance(object)) {
+            return object;
+        }
         TypeConverter typeConverter = beanFactory.getTypeConverter();
         /*
          * 将参数中的object转换成requiredType类型
@@ -0,0 +1,71 @@
+package com.melot.websocket.support;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ByteProcessor;
+import io.netty.util.CharsetUtil;
+
+/**
+ * UTF-8 frame 内容上的延迟解码 {@link CharSequence}。
+ * <p>
+ * 首次访问时扫描一次内容：纯 ASCII 时 {@link #charAt(int)} 直接读取底层 {@link ByteBuf}，不产生任何拷贝；
+ * 否则才解码为 {@link String} 并缓存。底层内存是借用的，回调返回后不可再访问。
+ */
+public final class FrameCharSequence implements CharSequence {
+    private static final ByteProcessor FIND_NON_ASCII = new ByteProcessor() {
+        @Override
+        public boolean process(byte value) {
+            return value >= 0;
+        }
+    };
+
+    private final ByteBuf content;
+    private final int offset;
+    private final int length;
+    /**
+     * 0 未检测，1 纯 ASCII，-1 需要解码
+     */
+    private int ascii;
+    private String decoded;
+
+    public FrameCharSequence(ByteBuf content) {
+        this.content = content;
+        this.offset = content.readerIndex();
+        this.length = content.readableBytes();
+    }
+
+    private boolean isAscii() {
+        if (ascii == 0) {
+            ascii = content.forEachByte(offset, length, FIND_NON_ASCII) == -1 ? 1 : -1;
+        }
+        return ascii == 1;
+    }
+
+    @Override
+    public int length() {
+        return isAscii() ? length : toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (isAscii()) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+            }
+            return (char) (content.getByte(offset + index) & 0xFF);
+        }
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (decoded == null) {
+            decoded = content.toString(offset, length, CharsetUtil.UTF_8);
+        }
+        return decoded;
+    }
+}
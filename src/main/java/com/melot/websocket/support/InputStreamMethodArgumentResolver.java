@@ -0,0 +1,28 @@
+package com.melot.websocket.support;
+
+import com.melot.websocket.annotation.OnBinary;
+import com.melot.websocket.annotation.OnMessage;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.Channel;
+import org.springframework.core.MethodParameter;
+
+import java.io.InputStream;
+
+/**
+ * 以 {@link InputStream} 的方式读取 frame 内容，直接读取池化内存，不做拷贝。
+ * <p>
+ * 该流只在回调执行期间有效(借用)，回调返回后 frame 会被释放。
+ */
+public class InputStreamMethodArgumentResolver implements MethodArgumentResolver {
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return (parameter.getMethod().isAnnotationPresent(OnMessage.class) || parameter.getMethod().isAnnotationPresent(OnBinary.class))
+                && parameter.getParameterType() == InputStream.class;
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
+        return new ByteBufInputStream(((ByteBufHolder) object).content());
+    }
+}
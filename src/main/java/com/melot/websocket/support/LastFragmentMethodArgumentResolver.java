@@ -0,0 +1,24 @@
+package com.melot.websocket.support;
+
+import com.melot.websocket.annotation.OnBinary;
+import com.melot.websocket.annotation.OnMessage;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.springframework.core.MethodParameter;
+
+/**
+ * OnMessage/OnBinary 的 boolean 参数：当前帧是否是消息的最后一个分片
+ */
+public class LastFragmentMethodArgumentResolver implements MethodArgumentResolver {
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        Class<?> type = parameter.getParameterType();
+        return (parameter.getMethod().isAnnotationPresent(OnMessage.class) || parameter.getMethod().isAnnotationPresent(OnBinary.class))
+                && (type == boolean.class || type == Boolean.class);
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
+        return !(object instanceof WebSocketFrame) || ((WebSocketFrame) object).isFinalFragment();
+    }
+}
@@ -0,0 +1,235 @@
+package com.melot.websocket.support;
+
+import io.netty.channel.Channel;
+import org.springframework.core.MethodParameter;
+import org.springframework.util.ClassUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * 经 {@link LambdaMetafactory} 生成的调用器。
+ * 注册期为回调方法生成一个实现 CallN 接口的类，类中直接 invokevirtual 目标方法，JIT 可以内联到调用点；
+ * 按参数个数生成定长的子类，参数解析器以字段形式绑定，调用时参数直接压栈，不分配 {@code Object[]}。
+ */
+public abstract class MethodHandleInvoker implements MethodInvoker {
+    /**
+     * 支持生成的最大参数个数，超过时由 {@link ReflectiveMethodInvoker} 兜底
+     */
+    public static final int MAX_ARITY = 5;
+
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private static final Class<?>[] CALL_TYPES = {Call0.class, Call1.class, Call2.class, Call3.class, Call4.class, Call5.class};
+
+    /**
+     * @return 生成的调用器；参数个数超过 {@link #MAX_ARITY}，或方法签名中的类对 starter 的类加载器不可见
+     * (生成的类由该类加载器解析)时返回 {@code null}
+     * @throws Throwable 方法或其声明类不可访问，或无法生成调用点
+     */
+    public static MethodInvoker create(Method method, MethodParameter[] parameters, MethodArgumentResolver[] resolvers) throws Throwable {
+        int arity = parameters.length;
+        if (arity > MAX_ARITY || !isVisible(method)) {
+            return null;
+        }
+        MethodHandle handle = lookup.unreflect(method);
+        // (Object implement, Object arg0...)void，实际类型用于生成类中的强转和拆箱，返回值直接丢弃
+        MethodType erased = MethodType.genericMethodType(arity + 1).changeReturnType(void.class);
+        MethodType instantiated = MethodType.methodType(void.class, method.getParameterTypes()).wrap()
+                .changeReturnType(void.class).insertParameterTypes(0, method.getDeclaringClass());
+        CallSite site = LambdaMetafactory.metafactory(lookup, "call", MethodType.methodType(CALL_TYPES[arity]),
+                erased, handle, instantiated);
+        Object call = site.getTarget().invoke();
+        switch (arity) {
+            case 0:
+                return new Invoker0((Call0) call);
+            case 1:
+                return new Invoker1((Call1) call, parameters, resolvers);
+            case 2:
+                return new Invoker2((Call2) call, parameters, resolvers);
+            case 3:
+                return new Invoker3((Call3) call, parameters, resolvers);
+            case 4:
+                return new Invoker4((Call4) call, parameters, resolvers);
+            default:
+                return new Invoker5((Call5) call, parameters, resolvers);
+        }
+    }
+
+    private static boolean isVisible(Method method) {
+        if (!isVisible(method.getDeclaringClass()) || !isVisible(method.getReturnType())) {
+            return false;
+        }
+        for (Class<?> type : method.getParameterTypes()) {
+            if (!isVisible(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isVisible(Class<?> type) {
+        return type.isPrimitive() || ClassUtils.isVisible(type, MethodHandleInvoker.class.getClassLoader());
+    }
+
+    interface Call0 {
+        void call(Object implement);
+    }
+
+    interface Call1 {
+        void call(Object implement, Object a0);
+    }
+
+    interface Call2 {
+        void call(Object implement, Object a0, Object a1);
+    }
+
+    interface Call3 {
+        void call(Object implement, Object a0, Object a1, Object a2);
+    }
+
+    interface Call4 {
+        void call(Object implement, Object a0, Object a1, Object a2, Object a3);
+    }
+
+    interface Call5 {
+        void call(Object implement, Object a0, Object a1, Object a2, Object a3, Object a4);
+    }
+
+    private static final class Invoker0 extends MethodHandleInvoker {
+        private final Call0 call;
+
+        Invoker0(Call0 call) {
+            this.call = call;
+        }
+
+        @Override
+        public void invoke(Object implement, Channel channel, Object object) throws Throwable {
+            call.call(implement);
+        }
+    }
+
+    private static final class Invoker1 extends MethodHandleInvoker {
+        private final Call1 call;
+        private final MethodParameter p0;
+        private final MethodArgumentResolver r0;
+
+        Invoker1(Call1 call, MethodParameter[] parameters, MethodArgumentResolver[] resolvers) {
+            this.call = call;
+            this.p0 = parameters[0];
+            this.r0 = resolvers[0];
+        }
+
+        @Override
+        public void invoke(Object implement, Channel channel, Object object) throws Throwable {
+            call.call(implement,
+                    r0.resolveArgument(p0, channel, object));
+        }
+    }
+
+    private static final class Invoker2 extends MethodHandleInvoker {
+        private final Call2 call;
+        private final MethodParameter p0, p1;
+        private final MethodArgumentResolver r0, r1;
+
+        Invoker2(Call2 call, MethodParameter[] parameters, MethodArgumentResolver[] resolvers) {
+            this.call = call;
+            this.p0 = parameters[0];
+            this.p1 = parameters[1];
+            this.r0 = resolvers[0];
+            this.r1 = resolvers[1];
+        }
+
+        @Override
+        public void invoke(Object implement, Channel channel, Object object) throws Throwable {
+            call.call(implement,
+                    r0.resolveArgument(p0, channel, object),
+                    r1.resolveArgument(p1, channel, object));
+        }
+    }
+
+    private static final class Invoker3 extends MethodHandleInvoker {
+        private final Call3 call;
+        private final MethodParameter p0, p1, p2;
+        private final MethodArgumentResolver r0, r1, r2;
+
+        Invoker3(Call3 call, MethodParameter[] parameters, MethodArgumentResolver[] resolvers) {
+            this.call = call;
+            this.p0 = parameters[0];
+            this.p1 = parameters[1];
+            this.p2 = parameters[2];
+            this.r0 = resolvers[0];
+            this.r1 = resolvers[1];
+            this.r2 = resolvers[2];
+        }
+
+        @Override
+        public void invoke(Object implement, Channel channel, Object object) throws Throwable {
+            call.call(implement,
+                    r0.resolveArgument(p0, channel, object),
+                    r1.resolveArgument(p1, channel, object),
+                    r2.resolveArgument(p2, channel, object));
+        }
+    }
+
+    private static final class Invoker4 extends MethodHandleInvoker {
+        private final Call4 call;
+        private final MethodParameter p0, p1, p2, p3;
+        private final MethodArgumentResolver r0, r1, r2, r3;
+
+        Invoker4(Call4 call, MethodParameter[] parameters, MethodArgumentResolver[] resolvers) {
+            this.call = call;
+            this.p0 = parameters[0];
+            this.p1 = parameters[1];
+            this.p2 = parameters[2];
+            this.p3 = parameters[3];
+            this.r0 = resolvers[0];
+            this.r1 = resolvers[1];
+            this.r2 = resolvers[2];
+            this.r3 = resolvers[3];
+        }
+
+        @Override
+        public void invoke(Object implement, Channel channel, Object object) throws Throwable {
+            call.call(implement,
+                    r0.resolveArgument(p0, channel, object),
+                    r1.resolveArgument(p1, channel, object),
+                    r2.resolveArgument(p2, channel, object),
+                    r3.resolveArgument(p3, channel, object));
+        }
+    }
+
+    private static final class Invoker5 extends MethodHandleInvoker {
+        private final Call5 call;
+        private final MethodParameter p0, p1, p2, p3, p4;
+        private final MethodArgumentResolver r0, r1, r2, r3, r4;
+
+        Invoker5(Call5 call, MethodParameter[] parameters, MethodArgumentResolver[] resolvers) {
+            this.call = call;
+            this.p0 = parameters[0];
+            this.p1 = parameters[1];
+            this.p2 = parameters[2];
+            this.p3 = parameters[3];
+            this.p4 = parameters[4];
+            this.r0 = resolvers[0];
+            this.r1 = resolvers[1];
+            this.r2 = resolvers[2];
+            this.r3 = resolvers[3];
+            this.r4 = resolvers[4];
+        }
+
+        @Override
+        public void invoke(Object implement, Channel channel, Object object) throws Throwable {
+            call.call(implement,
+                    r0.resolveArgument(p0, channel, object),
+                    r1.resolveArgument(p1, channel, object),
+                    r2.resolveArgument(p2, channel, object),
+                    r3.resolveArgument(p3, channel, object),
+                    r4.resolveArgument(p4, channel, object));
+        }
+    }
+}
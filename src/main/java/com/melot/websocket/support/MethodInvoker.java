@@ -0,0 +1,17 @@
+package com.melot.websocket.support;
+
+import io.netty.channel.Channel;
+
+/**
+ * 生命周期回调(@OnOpen/@OnMessage...)的调用器，在注册期由 {@link com.melot.websocket.model.MethodMapping} 构建，
+ * 参数解析器直接绑定在调用器内部，运行期不再经过 {@code Method.invoke} 和 {@code Object[]} 参数数组。
+ */
+public interface MethodInvoker {
+
+    /**
+     * @param implement @ServerEndpoint 实例
+     * @param channel   当前连接
+     * @param object    回调对应的数据(frame、event、throwable...)，交给参数解析器
+     */
+    void invoke(Object implement, Channel channel, Object object) throws Throwable;
+}
@@ -0,0 +1,43 @@
+package com.melot.websocket.support;
+
+import com.melot.websocket.annotation.PathVariable;
+import com.melot.websocket.handler.EndpointServerHandler;
+import io.netty.channel.Channel;
+import org.springframework.beans.SimpleTypeConverter;
+import org.springframework.beans.TypeConverter;
+import org.springframework.beans.factory.support.AbstractBeanFactory;
+import org.springframework.core.MethodParameter;
+
+import java.util.Map;
+
+public class PathVariableMethodArgumentResolver implements MethodArgumentResolver {
+
+    private AbstractBeanFactory beanFactory;
+
+    public PathVariableMethodArgumentResolver(AbstractBeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.hasParameterAnnotation(PathVariable.class);
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
+        Map<String, String> variables = channel.attr(EndpointServerHandler.PATH_VARIABLES_KEY).get();
+        if (variables == null) {
+            return null;
+        }
+        String name = parameter.getParameterAnnotation(PathVariable.class).value();
+        if (name.isEmpty()) {
+            name = parameter.getParameterName();
+        }
+        String value = variables.get(name);
+        if (value == null || parameter.getParameterType() == String.class) {
+            return value;
+        }
+        TypeConverter typeConverter = beanFactory != null ? beanFactory.getTypeConverter() : new SimpleTypeConverter();
+        return typeConverter.convertIfNecessary(value, parameter.getParameterType());
+    }
+}
@@ -0,0 +1,35 @@
+package com.melot.websocket.support;
+
+import io.netty.channel.Channel;
+import org.springframework.core.MethodParameter;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * 基于 {@link Method#invoke} 的调用器，生成调用器失败(参数过多、访问受限等)时的兜底实现
+ */
+public class ReflectiveMethodInvoker implements MethodInvoker {
+    private final Method method;
+    private final MethodParameter[] parameters;
+    private final MethodArgumentResolver[] resolvers;
+
+    public ReflectiveMethodInvoker(Method method, MethodParameter[] parameters, MethodArgumentResolver[] resolvers) {
+        this.method = method;
+        this.parameters = parameters;
+        this.resolvers = resolvers;
+    }
+
+    @Override
+    public void invoke(Object implement, Channel channel, Object object) throws Throwable {
+        Object[] args = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            args[i] = resolvers[i].resolveArgument(parameters[i], channel, object);
+        }
+        try {
+            method.invoke(implement, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.melot.websocket.support;
+
+import com.melot.websocket.codec.MessageDiscriminator;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 按消息类型分发到 {@code @OnMessage(type = ...)}/{@code @OnBinary(type = ...)} 方法的调用器。
+ * <p>
+ * 类型到调用器的表在注册期构建：类型取值范围不大时是以类型为下标的数组，否则是有序 int 数组上的二分查找；
+ * 没有匹配的类型时交给未声明 type 的方法，没有该方法时忽略消息。分片消息按首帧的类型路由，后续分片沿用首帧的结果
+ */
+public class TypeRoutingInvoker implements MethodInvoker {
+    /**
+     * 类型跨度不超过该值时使用数组直接下标
+     */
+    private static final int MAX_DENSE_SPAN = 1024;
+
+    /**
+     * 未结束的分片消息选中的调用器，收到最后一帧时清除
+     */
+    private static final AttributeKey<MethodInvoker> FRAGMENT_ROUTE_KEY = AttributeKey.valueOf("WEBSOCKET_FRAGMENT_ROUTE");
+    /**
+     * 分片消息没有对应方法时的占位
+     */
+    private static final MethodInvoker IGNORE = (implement, channel, object) -> {
+    };
+
+    private final MessageDiscriminator discriminator;
+    private final MethodInvoker fallback;
+
+    private final int min;
+    private final MethodInvoker[] dense;
+
+    private final int[] keys;
+    private final MethodInvoker[] values;
+
+    public TypeRoutingInvoker(MessageDiscriminator discriminator, Map<Integer, MethodInvoker> routes, MethodInvoker fallback) {
+        this.discriminator = discriminator;
+        this.fallback = fallback;
+        int[] types = new int[routes.size()];
+        int n = 0;
+        for (Integer type : routes.keySet()) {
+            types[n++] = type;
+        }
+        Arrays.sort(types);
+        long span = types.length == 0 ? 0 : (long) types[types.length - 1] - types[0] + 1;
+        if (span <= MAX_DENSE_SPAN) {
+            this.min = types.length == 0 ? 0 : types[0];
+            this.dense = new MethodInvoker[(int) span];
+            for (int type : types) {
+                dense[type - min] = routes.get(type);
+            }
+            this.keys = null;
+            this.values = null;
+        } else {
+            this.min = 0;
+            this.dense = null;
+            this.keys = types;
+            this.values = new MethodInvoker[types.length];
+            for (int i = 0; i < types.length; i++) {
+                values[i] = routes.get(types[i]);
+            }
+        }
+    }
+
+    @Override
+    public void invoke(Object implement, Channel channel, Object object) throws Throwable {
+        WebSocketFrame frame = (WebSocketFrame) object;
+        Attribute<MethodInvoker> fragmentRoute = channel.attr(FRAGMENT_ROUTE_KEY);
+        MethodInvoker invoker = frame.isFinalFragment() ? fragmentRoute.getAndSet(null) : fragmentRoute.get();
+        if (invoker == null) {
+            invoker = route(discriminator.discriminate(frame.content()));
+            if (invoker == null) {
+                invoker = fallback != null ? fallback : IGNORE;
+            }
+            if (!frame.isFinalFragment()) {
+                fragmentRoute.set(invoker);
+            }
+        }
+        if (invoker != IGNORE) {
+            invoker.invoke(implement, channel, object);
+        }
+    }
+
+    private MethodInvoker route(int type) {
+        if (type == MessageDiscriminator.NONE) {
+            return null;
+        }
+        if (dense != null) {
+            long index = (long) type - min;
+            return index >= 0 && index < dense.length ? dense[(int) index] : null;
+        }
+        int index = Arrays.binarySearch(keys, type);
+        return index >= 0 ? values[index] : null;
+    }
+}
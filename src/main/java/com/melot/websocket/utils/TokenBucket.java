@@ -0,0 +1,64 @@
+package com.melot.websocket.utils;
+
+/**
+ * 令牌桶，令牌按 rate 每秒匀速补充，最多积累 burst 个。
+ * <p>
+ * 余额不少于1个令牌即可取，一次取走超过余额的令牌时余额变为负数(欠账)，大消息不会永远取不到，长期平均速率仍不超过 rate。
+ * 非线程安全，每个连接的桶只在其 EventLoop 中访问
+ */
+public class TokenBucket {
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param rate  每秒补充的令牌数
+     * @param burst 最多积累的令牌数，初始为满
+     */
+    public TokenBucket(long rate, long burst) {
+        this.tokensPerNano = rate / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * 余额不少于1个令牌时取走 permits 个令牌
+     *
+     * @return 余额不足时返回 false，不扣除令牌
+     */
+    public boolean tryAcquire(long permits) {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= permits;
+        return true;
+    }
+
+    /**
+     * 余额是否不少于1个令牌，不扣除令牌
+     */
+    public boolean canAcquire() {
+        refill();
+        return tokens >= 1;
+    }
+
+    /**
+     * 无论余额多少都取走 permits 个令牌
+     *
+     * @return 欠账(余额为负)时还清欠账需等待的纳秒数，0 表示未超出配额无需等待
+     */
+    public long acquire(long permits) {
+        refill();
+        tokens -= permits;
+        return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano) + 1;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}